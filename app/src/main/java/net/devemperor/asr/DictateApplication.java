@@ -1,11 +1,21 @@
 package net.devemperor.asr;
 
 import android.app.Application;
+import android.content.SharedPreferences;
+
+import net.devemperor.asr.network.ApiClientPool;
 
 public class DictateApplication extends Application {
+
+    // kept as a field, SharedPreferences only holds listeners weakly
+    private final SharedPreferences.OnSharedPreferenceChangeListener apiSettingsListener = (sharedPreferences, key) -> {
+        if (ApiClientPool.affectsClients(key)) ApiClientPool.invalidate();
+    };
+
     @Override
     public void onCreate() {
         super.onCreate();
         DictateUtils.applyApplicationLocale(this);
+        getSharedPreferences("net.devemperor.asr", MODE_PRIVATE).registerOnSharedPreferenceChangeListener(apiSettingsListener);
     }
 }
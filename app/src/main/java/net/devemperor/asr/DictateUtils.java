@@ -8,8 +8,6 @@ import android.media.MediaMetadataRetriever;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.core.os.LocaleListCompat;
 
-import com.openai.client.okhttp.OpenAIOkHttpClient;
-
 import java.io.File;
 import java.net.Authenticator;
 import java.net.InetSocketAddress;
@@ -22,6 +20,8 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import okhttp3.OkHttpClient;
+
 public class DictateUtils {
 
     public static final String PROMPT_PUNCTUATION_CAPITALIZATION = "This sentence has capitalization and punctuation.";
@@ -307,7 +307,7 @@ public class DictateUtils {
         return true;
     }
 
-    public static void applyProxy(OpenAIOkHttpClient.Builder clientBuilder, SharedPreferences sp) {
+    public static void applyProxy(OkHttpClient.Builder clientBuilder, SharedPreferences sp) {
         String proxyInput = sp.getString("net.devemperor.asr.proxy_host", "");
         boolean proxyEnabled = sp.getBoolean("net.devemperor.asr.proxy_enabled", false);
 
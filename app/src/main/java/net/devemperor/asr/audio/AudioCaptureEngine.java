@@ -0,0 +1,266 @@
+package net.devemperor.asr.audio;
+
+import android.annotation.SuppressLint;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// records mono 16-bit PCM with AudioRecord on a high-priority thread and hands fixed-size frames to the registered sinks
+public class AudioCaptureEngine {
+
+    private static final String TAG = "AudioCaptureEngine";
+    public static final int FRAME_DURATION_MS = 20;
+    private static final int RING_BUFFER_DURATION_MS = 4000;
+    private static final long CAPTURE_JOIN_TIMEOUT_MS = 1000;  // a read returns after one frame
+    private static final long DRAIN_TIMEOUT_MS = 10000;  // encoders may need a while to flush on slow devices
+
+    private final int audioSource;
+    private final int sampleRate;
+    private final int frameSize;
+    private final PcmRingBuffer ringBuffer;
+    private final short[] captureFrame;
+    private final short[] dispatchFrame;
+    private final List<PcmSink> sinks = new CopyOnWriteArrayList<>();
+    private final Object frameLock = new Object();
+
+    private AudioRecord audioRecord;
+    private Thread captureThread;
+    private Thread dispatchThread;
+    private volatile boolean capturing = false;
+    private volatile boolean paused = false;
+    private long startRequestedNanos = 0;
+    private volatile long firstFrameNanos = 0;
+
+    public AudioCaptureEngine(int audioSource, int sampleRate) {
+        this.audioSource = audioSource;
+        this.sampleRate = sampleRate;
+        this.frameSize = sampleRate * FRAME_DURATION_MS / 1000;
+        this.ringBuffer = new PcmRingBuffer(sampleRate * RING_BUFFER_DURATION_MS / 1000);
+        this.captureFrame = new short[frameSize];
+        this.dispatchFrame = new short[frameSize];
+    }
+
+    public void addSink(PcmSink sink) {
+        sinks.add(sink);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    public boolean isPrepared() {
+        return audioRecord != null && !capturing;
+    }
+
+    public int getAudioSource() {
+        return audioSource;
+    }
+
+    // time from the start request until the first frame came out of AudioRecord, -1 while unknown
+    public long getStartLatencyMs() {
+        if (startRequestedNanos == 0 || firstFrameNanos == 0) return -1;
+        return (firstFrameNanos - startRequestedNanos) / 1000000;
+    }
+
+    // creates the AudioRecord up front without opening the microphone, so start() only has to begin reading
+    @SuppressLint("MissingPermission")  // callers check RECORD_AUDIO before preparing a recording
+    public void prepare() throws IOException {
+        if (audioRecord != null) return;
+
+        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) throw new IOException("Unsupported capture format: " + sampleRate + " Hz");
+        try {
+            audioRecord = new AudioRecord(audioSource, sampleRate, AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT, Math.max(minBufferSize, frameSize * 2 * 8));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("AudioRecord could not be created", e);
+        }
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            audioRecord = null;
+            throw new IOException("AudioRecord could not be initialized");
+        }
+    }
+
+    public void start() throws IOException {
+        start(SystemClock.elapsedRealtimeNanos());
+    }
+
+    // startRequestedNanos is the elapsedRealtimeNanos of the user's tap, used for the start latency
+    public void start(long startRequestedNanos) throws IOException {
+        if (capturing) return;
+        prepare();
+
+        this.startRequestedNanos = startRequestedNanos;
+        firstFrameNanos = 0;
+        ringBuffer.clear();
+        paused = false;
+        try {
+            audioRecord.startRecording();
+        } catch (IllegalStateException e) {
+            releaseAudioRecord();
+            throw new IOException("AudioRecord could not be started", e);
+        }
+
+        // the microphone is read before the encoders are up; the ring buffer holds that pre-roll until dispatch starts
+        capturing = true;
+        captureThread = new Thread(this::captureLoop, "DictateCapture");
+        captureThread.start();
+
+        for (int i = 0; i < sinks.size(); i++) {
+            try {
+                sinks.get(i).onStart(sampleRate);
+            } catch (IOException e) {
+                for (int j = 0; j < i; j++) sinks.get(j).onStop();  // close sinks that were already opened
+                capturing = false;
+                joinQuietly(captureThread, CAPTURE_JOIN_TIMEOUT_MS);
+                captureThread = null;
+                releaseAudioRecord();
+                throw e;
+            }
+        }
+
+        dispatchThread = new Thread(this::dispatchLoop, "DictateCaptureDispatch");
+        dispatchThread.start();
+    }
+
+    // frees a prepared engine that was never started
+    public void release() {
+        if (capturing || captureThread != null) {
+            stop();
+        } else {
+            releaseAudioRecord();
+        }
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // stops capturing, flushes all remaining frames into the sinks and waits until every sink has finished;
+    // this can take a while, so call it off the main thread
+    public void stop() {
+        if (!capturing && captureThread == null) return;
+        capturing = false;
+
+        if (!joinQuietly(captureThread, CAPTURE_JOIN_TIMEOUT_MS)) Log.w(TAG, "Capture thread did not stop in time");
+        releaseAudioRecord();  // the microphone is free for the next recording while the sinks drain
+        synchronized (frameLock) {
+            frameLock.notifyAll();
+        }
+        if (!joinQuietly(dispatchThread, DRAIN_TIMEOUT_MS)) {
+            Log.w(TAG, "Sinks did not finish within " + DRAIN_TIMEOUT_MS + " ms, interrupting");
+            dispatchThread.interrupt();
+            joinQuietly(dispatchThread, CAPTURE_JOIN_TIMEOUT_MS);
+        }
+        captureThread = null;
+        dispatchThread = null;
+
+        if (ringBuffer.getDroppedSamples() > 0) {
+            Log.w(TAG, "Dropped " + ringBuffer.getDroppedSamples() + " samples because sinks were too slow");
+        }
+    }
+
+    private void captureLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        AudioRecord record = audioRecord;  // stop() may release the field if this thread hangs in a read
+        while (capturing) {
+            int read = record.read(captureFrame, 0, frameSize);
+            if (read < 0) {
+                Log.e(TAG, "AudioRecord read failed: " + read);
+                break;
+            }
+            if (read == 0) continue;
+            if (firstFrameNanos == 0) firstFrameNanos = SystemClock.elapsedRealtimeNanos();
+            if (paused) continue;
+
+            ringBuffer.write(captureFrame, 0, read);
+            synchronized (frameLock) {
+                frameLock.notifyAll();
+            }
+        }
+    }
+
+    private void dispatchLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        while (!Thread.currentThread().isInterrupted()) {
+            synchronized (frameLock) {
+                while (capturing && ringBuffer.available() < frameSize) {
+                    try {
+                        frameLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();  // stop dispatching, the sinks are still closed below
+                        break;
+                    }
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) break;
+
+            if (ringBuffer.available() >= frameSize) {
+                dispatch(ringBuffer.read(dispatchFrame, 0, frameSize));
+            } else if (!capturing) {
+                dispatch(ringBuffer.read(dispatchFrame, 0, ringBuffer.available()));  // flush the last partial frame
+                break;
+            }
+        }
+
+        for (PcmSink sink : sinks) {
+            try {
+                sink.onStop();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Sink failed to stop", e);
+            }
+        }
+    }
+
+    private void dispatch(int length) {
+        if (length <= 0) return;
+        for (PcmSink sink : sinks) {
+            try {
+                sink.onPcm(dispatchFrame, 0, length);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Sink failed to process audio", e);
+            }
+        }
+    }
+
+    private void releaseAudioRecord() {
+        if (audioRecord == null) return;
+        if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+            try {
+                audioRecord.stop();
+            } catch (IllegalStateException ignored) { }
+        }
+        audioRecord.release();
+        audioRecord = null;
+    }
+
+    // false if the thread is still alive after the timeout
+    private static boolean joinQuietly(Thread thread, long timeoutMs) {
+        if (thread == null) return true;
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+}
@@ -0,0 +1,205 @@
+package net.devemperor.asr.audio;
+
+import android.annotation.SuppressLint;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// encodes captured PCM with MediaCodec and writes it into a container file that can be uploaded directly
+public class AudioEncoderSink implements PcmSink {
+
+    private static final String TAG = "AudioEncoderSink";
+    private static final long CODEC_TIMEOUT_US = 10000;
+
+    @SuppressLint("InlinedApi")  // OPUS_OGG is only offered when isSupported() confirms API 29+
+    public enum Format {
+        AAC_M4A(MediaFormat.MIMETYPE_AUDIO_AAC, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4, "m4a", 44100),
+        OPUS_OGG(MediaFormat.MIMETYPE_AUDIO_OPUS, MediaMuxer.OutputFormat.MUXER_OUTPUT_OGG, "ogg", 48000);
+
+        final String mimeType;
+        final int muxerFormat;
+        final String fileExtension;
+        final int defaultSampleRate;
+
+        Format(String mimeType, int muxerFormat, String fileExtension, int defaultSampleRate) {
+            this.mimeType = mimeType;
+            this.muxerFormat = muxerFormat;
+            this.fileExtension = fileExtension;
+            this.defaultSampleRate = defaultSampleRate;
+        }
+
+        public String getFileExtension() {
+            return fileExtension;
+        }
+
+        public int getDefaultSampleRate() {
+            return defaultSampleRate;
+        }
+
+        // Opus encoding and the Ogg muxer are only available since Android 10
+        public boolean isSupported() {
+            if (this == AAC_M4A) return true;
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return false;
+            MediaFormat format = MediaFormat.createAudioFormat(mimeType, defaultSampleRate, 1);
+            return new MediaCodecList(MediaCodecList.REGULAR_CODECS).findEncoderForFormat(format) != null;
+        }
+
+        public static Format fromPreference(String value) {
+            Format format = "opus".equals(value) ? OPUS_OGG : AAC_M4A;
+            return format.isSupported() ? format : AAC_M4A;
+        }
+    }
+
+    private final File outputFile;
+    private final Format outputFormat;
+    private final int bitRate;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    private MediaCodec codec;
+    private MediaMuxer muxer;
+    private int trackIndex = -1;
+    private boolean muxerStarted = false;
+    private int sampleRate;
+    private long encodedSamples = 0;
+
+    public AudioEncoderSink(File outputFile, int bitRate) {
+        this(outputFile, Format.AAC_M4A, bitRate);
+    }
+
+    public AudioEncoderSink(File outputFile, Format outputFormat, int bitRate) {
+        this.outputFile = outputFile;
+        this.outputFormat = outputFormat;
+        this.bitRate = bitRate;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public long getEncodedDurationMs() {
+        return sampleRate == 0 ? 0 : encodedSamples * 1000 / sampleRate;
+    }
+
+    @Override
+    public void onStart(int sampleRate) throws IOException {
+        this.sampleRate = sampleRate;
+        encodedSamples = 0;
+        trackIndex = -1;
+        muxerStarted = false;
+
+        MediaFormat format = MediaFormat.createAudioFormat(outputFormat.mimeType, sampleRate, 1);
+        if (outputFormat == Format.AAC_M4A) {
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        }
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, sampleRate * 2);  // one second of 16-bit mono PCM
+
+        try {
+            codec = MediaCodec.createEncoderByType(outputFormat.mimeType);
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+            muxer = new MediaMuxer(outputFile.getAbsolutePath(), outputFormat.muxerFormat);
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e instanceof IOException ? (IOException) e : new IOException("Encoder could not be started", e);
+        }
+    }
+
+    @Override
+    public void onPcm(short[] samples, int offset, int length) {
+        if (codec == null) return;
+
+        int remaining = length;
+        int position = offset;
+        while (remaining > 0) {
+            int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+            if (inputIndex < 0) {
+                drain(false);
+                continue;
+            }
+            ByteBuffer inputBuffer = codec.getInputBuffer(inputIndex);
+            if (inputBuffer == null) continue;
+            inputBuffer.clear();
+            inputBuffer.order(ByteOrder.nativeOrder());
+            int count = Math.min(remaining, inputBuffer.remaining() / 2);
+            for (int i = 0; i < count; i++) {
+                inputBuffer.putShort(samples[position + i]);
+            }
+            codec.queueInputBuffer(inputIndex, 0, count * 2, encodedSamples * 1000000L / sampleRate, 0);
+            encodedSamples += count;
+            position += count;
+            remaining -= count;
+        }
+        drain(false);
+    }
+
+    @Override
+    public void onStop() {
+        if (codec == null) return;
+        try {
+            int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US * 10);
+            if (inputIndex >= 0) {
+                codec.queueInputBuffer(inputIndex, 0, 0, encodedSamples * 1000000L / sampleRate, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                drain(true);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to finish encoding " + outputFile.getName(), e);
+        }
+        release();
+    }
+
+    private void drain(boolean endOfStream) {
+        int idleRounds = 0;
+        while (true) {
+            int outputIndex = codec.dequeueOutputBuffer(bufferInfo, endOfStream ? CODEC_TIMEOUT_US : 0);
+            if (outputIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || ++idleRounds > 100) return;  // give up after ~1s without end-of-stream
+            } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                if (!muxerStarted) {
+                    trackIndex = muxer.addTrack(codec.getOutputFormat());
+                    muxer.start();
+                    muxerStarted = true;
+                }
+            } else if (outputIndex >= 0) {
+                ByteBuffer outputBuffer = codec.getOutputBuffer(outputIndex);
+                boolean isConfig = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                if (outputBuffer != null && bufferInfo.size > 0 && !isConfig && muxerStarted) {
+                    outputBuffer.position(bufferInfo.offset);
+                    outputBuffer.limit(bufferInfo.offset + bufferInfo.size);
+                    muxer.writeSampleData(trackIndex, outputBuffer, bufferInfo);
+                }
+                codec.releaseOutputBuffer(outputIndex, false);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) return;
+            }
+        }
+    }
+
+    private void release() {
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (IllegalStateException ignored) { }
+            codec.release();
+            codec = null;
+        }
+        if (muxer != null) {
+            try {
+                if (muxerStarted) muxer.stop();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Failed to finalize " + outputFile.getName(), e);
+            }
+            muxer.release();
+            muxer = null;
+            muxerStarted = false;
+        }
+    }
+}
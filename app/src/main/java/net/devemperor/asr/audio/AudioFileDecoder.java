@@ -0,0 +1,200 @@
+package net.devemperor.asr.audio;
+
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// decodes the audio track of any file MediaExtractor understands and feeds it as mono PCM at a fixed rate into a sink
+public class AudioFileDecoder {
+
+    private static final long CODEC_TIMEOUT_US = 10000;
+    private static final int LOW_PASS_TAPS = 63;
+
+    private final File inputFile;
+    private final int targetSampleRate;
+    private final short[] frame;
+    private int frameLength = 0;
+
+    // linear resampler state
+    private double step;
+    private double nextOutputPosition = 0;
+    private long inputIndex = 0;
+    private float previousSample = 0;
+    private int inputSampleRate = 0;
+
+    // anti-aliasing low-pass in front of the resampler, only used when downsampling
+    private float[] lowPass;
+    private float[] lowPassHistory;
+    private int lowPassPosition = 0;
+
+    public AudioFileDecoder(File inputFile, int targetSampleRate) {
+        this.inputFile = inputFile;
+        this.targetSampleRate = targetSampleRate;
+        this.frame = new short[targetSampleRate * AudioCaptureEngine.FRAME_DURATION_MS / 1000];
+    }
+
+    public void decodeTo(PcmSink sink) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec decoder = null;
+        boolean sinkStarted = false;
+        try {
+            extractor.setDataSource(inputFile.getAbsolutePath());
+            MediaFormat trackFormat = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    trackFormat = format;
+                    break;
+                }
+            }
+            if (trackFormat == null) throw new IOException("Unsupported audio format: no audio track in " + inputFile.getName());
+
+            String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+            try {
+                decoder = MediaCodec.createDecoderByType(mime);
+                decoder.configure(trackFormat, null, null, 0);
+                decoder.start();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                throw new IOException("Unsupported audio format: " + mime, e);
+            }
+
+            int channels = trackFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            boolean floatPcm = false;
+            setInputSampleRate(trackFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE));
+
+            sink.onStart(targetSampleRate);
+            sinkStarted = true;
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Decoding interrupted");
+
+                if (!inputDone) {
+                    int inputIndex = decoder.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        ByteBuffer inputBuffer = decoder.getInputBuffer(inputIndex);
+                        int size = inputBuffer == null ? -1 : extractor.readSampleData(inputBuffer, 0);
+                        if (size < 0) {
+                            decoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outputIndex = decoder.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = decoder.getOutputFormat();
+                    channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    setInputSampleRate(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE));
+                    floatPcm = outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                            && outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+                } else if (outputIndex >= 0) {
+                    ByteBuffer outputBuffer = decoder.getOutputBuffer(outputIndex);
+                    if (outputBuffer != null && info.size > 0) {
+                        outputBuffer.position(info.offset);
+                        outputBuffer.limit(info.offset + info.size);
+                        outputBuffer.order(ByteOrder.nativeOrder());
+                        processDecoded(outputBuffer, channels, floatPcm, sink);
+                    }
+                    decoder.releaseOutputBuffer(outputIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) break;
+                }
+            }
+
+            if (frameLength > 0) sink.onPcm(frame, 0, frameLength);
+            frameLength = 0;
+        } finally {
+            if (sinkStarted) sink.onStop();
+            if (decoder != null) {
+                try {
+                    decoder.stop();
+                } catch (IllegalStateException ignored) { }
+                decoder.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private void setInputSampleRate(int inputSampleRate) {
+        if (inputSampleRate == this.inputSampleRate) return;
+        this.inputSampleRate = inputSampleRate;
+        step = (double) inputSampleRate / targetSampleRate;
+        if (inputSampleRate > targetSampleRate) {
+            lowPass = createLowPass(0.45 * targetSampleRate / inputSampleRate);  // a bit below the new Nyquist frequency
+            lowPassHistory = new float[LOW_PASS_TAPS];
+            lowPassPosition = 0;
+        } else {
+            lowPass = null;
+        }
+    }
+
+    // Hamming-windowed sinc, cutoff in cycles per input sample
+    private static float[] createLowPass(double cutoff) {
+        float[] taps = new float[LOW_PASS_TAPS];
+        int middle = LOW_PASS_TAPS / 2;
+        double sum = 0;
+        for (int i = 0; i < LOW_PASS_TAPS; i++) {
+            int n = i - middle;
+            double sinc = n == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * n) / (Math.PI * n);
+            double window = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (LOW_PASS_TAPS - 1));
+            taps[i] = (float) (sinc * window);
+            sum += taps[i];
+        }
+        for (int i = 0; i < LOW_PASS_TAPS; i++) taps[i] /= (float) sum;  // unity gain at DC
+        return taps;
+    }
+
+    private float filter(float sample) {
+        lowPassHistory[lowPassPosition] = sample;
+        float result = 0;
+        int index = lowPassPosition;
+        for (float tap : lowPass) {
+            result += tap * lowPassHistory[index];
+            if (--index < 0) index = LOW_PASS_TAPS - 1;
+        }
+        if (++lowPassPosition == LOW_PASS_TAPS) lowPassPosition = 0;
+        return result;
+    }
+
+    // downmixes interleaved frames to mono and pushes them through the resampler
+    private void processDecoded(ByteBuffer buffer, int channels, boolean floatPcm, PcmSink sink) {
+        int bytesPerSample = floatPcm ? 4 : 2;
+        int frames = buffer.remaining() / (bytesPerSample * channels);
+        for (int i = 0; i < frames; i++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += floatPcm ? buffer.getFloat() * 32767f : buffer.getShort();
+            }
+            pushSample(sum / channels, sink);
+        }
+    }
+
+    private void pushSample(float sample, PcmSink sink) {
+        if (lowPass != null) sample = filter(sample);
+        long index = inputIndex++;
+        while (nextOutputPosition <= index) {
+            double fraction = nextOutputPosition - (index - 1);  // position between the previous and this sample
+            float value = previousSample + (sample - previousSample) * (float) fraction;
+            frame[frameLength++] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+            if (frameLength == frame.length) {
+                sink.onPcm(frame, 0, frameLength);
+                frameLength = 0;
+            }
+            nextOutputPosition += step;
+        }
+        previousSample = sample;
+    }
+}
@@ -0,0 +1,49 @@
+package net.devemperor.asr.audio;
+
+import java.util.Locale;
+
+// sample rate and bitrate ladder used for a recording, chosen to match what the transcription model actually needs
+public enum CaptureProfile {
+    // Whisper and gpt-4o-transcribe resample everything to 16 kHz mono, more only costs upload time
+    SPEECH(16000, new int[]{16000, 24000, 32000}, new int[]{12000, 16000, 20000}),
+    HIGH_QUALITY(0, new int[]{32000, 48000, 64000}, new int[]{16000, 20000, 24000});
+
+    private static final long SLOW_UPLOAD_KBPS = 256;
+    private static final long MEDIUM_UPLOAD_KBPS = 1024;
+
+    private final int sampleRate;  // 0 keeps the format's default sample rate
+    private final int[] aacBitRates;
+    private final int[] opusBitRates;
+
+    CaptureProfile(int sampleRate, int[] aacBitRates, int[] opusBitRates) {
+        this.sampleRate = sampleRate;
+        this.aacBitRates = aacBitRates;
+        this.opusBitRates = opusBitRates;
+    }
+
+    public int getSampleRate(AudioEncoderSink.Format format) {
+        return sampleRate == 0 ? format.getDefaultSampleRate() : sampleRate;
+    }
+
+    // highest bitrate of the ladder unless adaptive mode saw a slow uplink (uploadKbps <= 0 means unknown)
+    public int getBitRate(AudioEncoderSink.Format format, boolean adaptive, long uploadKbps) {
+        int[] ladder = format == AudioEncoderSink.Format.OPUS_OGG ? opusBitRates : aacBitRates;
+        if (!adaptive || uploadKbps <= 0) return ladder[ladder.length - 1];
+        if (uploadKbps < SLOW_UPLOAD_KBPS) return ladder[0];
+        if (uploadKbps < MEDIUM_UPLOAD_KBPS) return ladder[1];
+        return ladder[ladder.length - 1];
+    }
+
+    // "auto" picks SPEECH for models that are known to work on 16 kHz audio
+    public static CaptureProfile fromPreference(String value, String transcriptionModel) {
+        if ("speech".equals(value)) return SPEECH;
+        if ("high_quality".equals(value)) return HIGH_QUALITY;
+        return isSpeechModel(transcriptionModel) ? SPEECH : HIGH_QUALITY;
+    }
+
+    private static boolean isSpeechModel(String model) {
+        if (model == null) return false;
+        String name = model.toLowerCase(Locale.ROOT);
+        return name.contains("whisper") || name.contains("transcribe") || name.contains("distil");
+    }
+}
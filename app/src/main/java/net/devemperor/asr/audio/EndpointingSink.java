@@ -0,0 +1,55 @@
+package net.devemperor.asr.audio;
+
+// reports the end of an utterance once speech was heard and is followed by enough trailing silence
+public class EndpointingSink implements PcmSink {
+
+    public interface EndpointListener {
+        // called once per recording on the capture dispatch thread
+        void onEndpoint();
+    }
+
+    private final float thresholdDb;
+    private final int trailingSilenceMs;
+    private final EndpointListener listener;
+
+    private VoiceActivityDetector vad;
+    private int sampleRate;
+    private long silenceSamples = 0;
+    private boolean speechDetected = false;
+    private boolean fired = false;
+
+    public EndpointingSink(float thresholdDb, int trailingSilenceMs, EndpointListener listener) {
+        this.thresholdDb = thresholdDb;
+        this.trailingSilenceMs = Math.max(0, trailingSilenceMs - VoiceActivityDetector.HANGOVER_DURATION_MS);  // the detector already holds speech that long after each word
+        this.listener = listener;
+    }
+
+    @Override
+    public void onStart(int sampleRate) {
+        this.sampleRate = sampleRate;
+        vad = new VoiceActivityDetector(sampleRate, thresholdDb);
+        silenceSamples = 0;
+        speechDetected = false;
+        fired = false;
+    }
+
+    @Override
+    public void onPcm(short[] samples, int offset, int length) {
+        if (fired) return;
+        if (vad.process(samples, offset, length)) {
+            speechDetected = true;
+            silenceSamples = 0;
+            return;
+        }
+        if (!speechDetected) return;  // never stop before the user said something
+
+        silenceSamples += length;
+        if (silenceSamples * 1000 / sampleRate >= trailingSilenceMs) {
+            fired = true;
+            listener.onEndpoint();
+        }
+    }
+
+    @Override
+    public void onStop() { }
+}
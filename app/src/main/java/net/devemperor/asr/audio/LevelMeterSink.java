@@ -0,0 +1,58 @@
+package net.devemperor.asr.audio;
+
+// keeps a fixed-size history of frame peaks for the live level meter, nothing is allocated while recording
+public class LevelMeterSink implements PcmSink {
+
+    private static final float FLOOR_DB = -60f;
+
+    private final float[] peaks;
+    private volatile int writeCount = 0;
+
+    public LevelMeterSink(int historySize) {
+        this.peaks = new float[historySize];
+    }
+
+    public int getHistorySize() {
+        return peaks.length;
+    }
+
+    // latest level between 0 (silence) and 1 (full scale)
+    public float getLevel() {
+        int count = writeCount;
+        return count == 0 ? 0f : peaks[(count - 1) % peaks.length];
+    }
+
+    // copies the history oldest first into target (at least getHistorySize() long) and returns the number of valid entries
+    public int copyHistory(float[] target) {
+        int count = writeCount;
+        int valid = Math.min(count, peaks.length);
+        int start = count - valid;
+        for (int i = 0; i < valid; i++) {
+            target[i] = peaks[(start + i) % peaks.length];
+        }
+        return valid;
+    }
+
+    @Override
+    public void onStart(int sampleRate) {
+        writeCount = 0;
+    }
+
+    @Override
+    public void onPcm(short[] samples, int offset, int length) {
+        int peak = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int value = Math.abs(samples[i]);
+            if (value > peak) peak = value;
+        }
+        float db = peak == 0 ? FLOOR_DB : (float) (20 * Math.log10(peak / 32768.0));
+        float level = Math.max(0f, Math.min(1f, (db - FLOOR_DB) / -FLOOR_DB));  // dB scale reads more naturally than linear peaks
+
+        int count = writeCount;
+        peaks[count % peaks.length] = level;
+        writeCount = count + 1;  // single writer (dispatch thread), the UI only reads
+    }
+
+    @Override
+    public void onStop() { }
+}
@@ -0,0 +1,62 @@
+package net.devemperor.asr.audio;
+
+// preallocated single-producer/single-consumer ring buffer for 16-bit PCM samples
+public class PcmRingBuffer {
+
+    private final short[] buffer;
+    private final int capacity;
+    private volatile long writePosition = 0;
+    private volatile long readPosition = 0;
+    private volatile long droppedSamples = 0;
+
+    public PcmRingBuffer(int capacity) {
+        this.capacity = capacity;
+        this.buffer = new short[capacity];
+    }
+
+    // called by the capture thread only; drops samples if the consumer falls too far behind
+    public int write(short[] samples, int offset, int length) {
+        long write = writePosition;
+        int free = (int) (capacity - (write - readPosition));
+        int count = Math.min(length, free);
+        if (count < length) droppedSamples += length - count;
+        if (count <= 0) return 0;
+
+        int start = (int) (write % capacity);
+        int firstPart = Math.min(count, capacity - start);
+        System.arraycopy(samples, offset, buffer, start, firstPart);
+        if (count > firstPart) {
+            System.arraycopy(samples, offset + firstPart, buffer, 0, count - firstPart);
+        }
+        writePosition = write + count;
+        return count;
+    }
+
+    // called by the dispatch thread only
+    public int read(short[] target, int offset, int length) {
+        long read = readPosition;
+        int count = (int) Math.min(length, writePosition - read);
+        if (count <= 0) return 0;
+
+        int start = (int) (read % capacity);
+        int firstPart = Math.min(count, capacity - start);
+        System.arraycopy(buffer, start, target, offset, firstPart);
+        if (count > firstPart) {
+            System.arraycopy(buffer, 0, target, offset + firstPart, count - firstPart);
+        }
+        readPosition = read + count;
+        return count;
+    }
+
+    public int available() {
+        return (int) (writePosition - readPosition);
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    public void clear() {
+        readPosition = writePosition;
+    }
+}
@@ -0,0 +1,127 @@
+package net.devemperor.asr.audio;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// splits the PCM stream into separately encoded files, cutting at natural pauses once a segment is long enough
+public class PcmSegmenter implements PcmSink {
+
+    private static final String TAG = "PcmSegmenter";
+
+    public interface SegmentListener {
+        // called on the thread that feeds the segmenter as soon as a segment file is complete
+        void onSegmentReady(int index, File file, long durationMs, boolean hasSpeech);
+    }
+
+    private final File directory;
+    private final AudioEncoderSink.Format format;
+    private final int bitRate;
+    private final float vadThresholdDb;
+    private final long minSegmentMs;
+    private final long maxSegmentMs;
+    private final int cutPauseMs;
+    private final SegmentListener listener;
+
+    private int sampleRate;
+    private VoiceActivityDetector vad;
+    private AudioEncoderSink currentEncoder;
+    private int segmentIndex = 0;
+    private long segmentSamples = 0;
+    private long silenceSamples = 0;
+    private boolean segmentHasSpeech = false;
+    private volatile IOException failure;
+
+    public PcmSegmenter(File directory, AudioEncoderSink.Format format, int bitRate, float vadThresholdDb,
+                        long minSegmentMs, long maxSegmentMs, int cutPauseMs, SegmentListener listener) {
+        this.directory = directory;
+        this.format = format;
+        this.bitRate = bitRate;
+        this.vadThresholdDb = vadThresholdDb;
+        this.minSegmentMs = minSegmentMs;
+        this.maxSegmentMs = maxSegmentMs;
+        this.cutPauseMs = cutPauseMs;
+        this.listener = listener;
+    }
+
+    public int getSegmentCount() {
+        return segmentIndex;
+    }
+
+    // set when a segment could not be opened, the audio after it is missing from the segments
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void onStart(int sampleRate) throws IOException {
+        this.sampleRate = sampleRate;
+        vad = new VoiceActivityDetector(sampleRate, vadThresholdDb);
+        segmentIndex = 0;
+        failure = null;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Segment directory could not be created");
+        }
+        openSegment();
+    }
+
+    @Override
+    public void onPcm(short[] samples, int offset, int length) {
+        if (currentEncoder == null) return;
+        currentEncoder.onPcm(samples, offset, length);
+        segmentSamples += length;
+
+        if (vad.process(samples, offset, length)) {
+            segmentHasSpeech = true;
+            silenceSamples = 0;
+        } else {
+            silenceSamples += length;
+        }
+
+        long segmentMs = segmentSamples * 1000 / sampleRate;
+        long silenceMs = silenceSamples * 1000 / sampleRate;
+        if ((segmentMs >= minSegmentMs && silenceMs >= cutPauseMs) || segmentMs >= maxSegmentMs) {
+            closeSegment();
+            try {
+                openSegment();
+            } catch (IOException e) {
+                failure = e;  // the caller falls back to the complete audio
+                Log.e(TAG, "Failed to open segment " + segmentIndex + ", dropping the rest of the stream", e);
+            }
+        }
+    }
+
+    @Override
+    public void onStop() {
+        closeSegment();
+    }
+
+    private void openSegment() throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "segment_%03d.%s", segmentIndex, format.getFileExtension()));
+        AudioEncoderSink encoder = newEncoder(file);
+        encoder.onStart(sampleRate);
+        currentEncoder = encoder;  // only once it works, a failed encoder would report an empty segment
+        segmentSamples = 0;
+        silenceSamples = 0;
+        segmentHasSpeech = false;
+    }
+
+    // overridden by the tests, MediaCodec is not available on the JVM
+    AudioEncoderSink newEncoder(File file) {
+        return new AudioEncoderSink(file, format, bitRate);
+    }
+
+    private void closeSegment() {
+        if (currentEncoder == null) return;
+        AudioEncoderSink encoder = currentEncoder;
+        currentEncoder = null;
+        encoder.onStop();
+        if (segmentSamples == 0) {
+            encoder.getOutputFile().delete();
+            return;
+        }
+        listener.onSegmentReady(segmentIndex++, encoder.getOutputFile(), segmentSamples * 1000 / sampleRate, segmentHasSpeech);
+    }
+}
@@ -0,0 +1,13 @@
+package net.devemperor.asr.audio;
+
+import java.io.IOException;
+
+// receives mono 16-bit PCM frames from the AudioCaptureEngine (always called on the dispatch thread)
+public interface PcmSink {
+
+    void onStart(int sampleRate) throws IOException;
+
+    void onPcm(short[] samples, int offset, int length);
+
+    void onStop();
+}
@@ -0,0 +1,42 @@
+package net.devemperor.asr.audio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// forwards the same PCM stream to several sinks, e.g. behind a SilenceTrimmingSink
+public class PcmSinkGroup implements PcmSink {
+
+    private final List<PcmSink> sinks = new ArrayList<>();
+
+    public PcmSinkGroup add(PcmSink sink) {
+        sinks.add(sink);
+        return this;
+    }
+
+    @Override
+    public void onStart(int sampleRate) throws IOException {
+        for (int i = 0; i < sinks.size(); i++) {
+            try {
+                sinks.get(i).onStart(sampleRate);
+            } catch (IOException e) {
+                for (int j = 0; j < i; j++) sinks.get(j).onStop();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void onPcm(short[] samples, int offset, int length) {
+        for (int i = 0; i < sinks.size(); i++) {
+            sinks.get(i).onPcm(samples, offset, length);
+        }
+    }
+
+    @Override
+    public void onStop() {
+        for (int i = 0; i < sinks.size(); i++) {
+            sinks.get(i).onStop();
+        }
+    }
+}
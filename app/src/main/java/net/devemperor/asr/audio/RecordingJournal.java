@@ -0,0 +1,298 @@
+package net.devemperor.asr.audio;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// writes the captured PCM into small self-contained WAV parts so a recording survives if the process gets killed
+public class RecordingJournal implements PcmSink {
+
+    private static final String TAG = "RecordingJournal";
+    private static final String INDEX_FILE = "session.json";
+    private static final int PART_DURATION_MS = 10000;
+    private static final int WAV_HEADER_SIZE = 44;
+
+    private final File directory;
+    private final byte[] byteFrame;
+    private int sampleRate;
+    private int partIndex;
+    private long partSamples;
+    private long partLimitSamples;
+    private long totalSamples;
+    private long startedAt;
+    private RandomAccessFile currentPart;
+
+    public RecordingJournal(File directory) {
+        this.directory = directory;
+        this.byteFrame = new byte[48000 * AudioCaptureEngine.FRAME_DURATION_MS / 1000 * 2];  // enough for the highest capture rate
+    }
+
+    @Override
+    public void onStart(int sampleRate) throws IOException {
+        this.sampleRate = sampleRate;
+        discard(directory);
+        if (!directory.exists() && !directory.mkdirs()) throw new IOException("Journal directory could not be created");
+
+        partIndex = 0;
+        totalSamples = 0;
+        startedAt = System.currentTimeMillis();
+        partLimitSamples = (long) sampleRate * PART_DURATION_MS / 1000;
+        writeIndex(false);
+        openPart();
+    }
+
+    @Override
+    public void onPcm(short[] samples, int offset, int length) {
+        if (currentPart == null) return;
+        int written = 0;
+        while (written < length) {
+            int count = (int) Math.min(length - written, Math.min(partLimitSamples - partSamples, byteFrame.length / 2));
+            for (int i = 0; i < count; i++) {
+                short sample = samples[offset + written + i];
+                byteFrame[i * 2] = (byte) sample;
+                byteFrame[i * 2 + 1] = (byte) (sample >> 8);
+            }
+            try {
+                currentPart.write(byteFrame, 0, count * 2);  // already in the page cache, so it survives a process kill
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write journal part", e);
+                closePart();
+                return;
+            }
+            written += count;
+            partSamples += count;
+            totalSamples += count;
+
+            if (partSamples >= partLimitSamples) {
+                closePart();
+                partIndex++;
+                try {
+                    openPart();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to open journal part", e);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onStop() {
+        closePart();
+        try {
+            writeIndex(true);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to finish journal index", e);
+        }
+    }
+
+    private void openPart() throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "part_%03d.wav", partIndex));
+        currentPart = new RandomAccessFile(file, "rw");
+        currentPart.setLength(0);
+        currentPart.write(wavHeader(sampleRate, 0));
+        partSamples = 0;
+    }
+
+    private void closePart() {
+        if (currentPart == null) return;
+        try {
+            patchWavHeader(currentPart, partSamples * 2);
+            currentPart.getFD().sync();
+            currentPart.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close journal part", e);
+        }
+        currentPart = null;
+    }
+
+    private void writeIndex(boolean finished) throws IOException {
+        try {
+            JSONObject index = new JSONObject();
+            index.put("sample_rate", sampleRate);
+            index.put("started_at", startedAt);
+            index.put("duration_ms", totalSamples * 1000 / sampleRate);
+            index.put("finished", finished);
+
+            File temp = new File(directory, INDEX_FILE + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(index.toString().getBytes("UTF-8"));
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(new File(directory, INDEX_FILE))) throw new IOException("Journal index could not be written");
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // returns the interrupted or unconsumed recording in the directory, or null if there is nothing worth recovering
+    public static RecoveredRecording findRecoverable(File directory) {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.exists()) return null;
+
+        int sampleRate;
+        try (InputStream in = new FileInputStream(indexFile)) {
+            byte[] data = new byte[(int) indexFile.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) break;
+                read += count;
+            }
+            sampleRate = new JSONObject(new String(data, 0, read, "UTF-8")).getInt("sample_rate");
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Unreadable journal index", e);
+            return null;
+        }
+
+        File[] parts = directory.listFiles((dir, name) -> name.startsWith("part_") && name.endsWith(".wav"));
+        if (parts == null || parts.length == 0 || sampleRate <= 0) return null;
+        Arrays.sort(parts);
+
+        List<File> validParts = new ArrayList<>();
+        long totalBytes = 0;
+        for (File part : parts) {
+            long dataBytes = (part.length() - WAV_HEADER_SIZE) & ~1L;
+            if (dataBytes <= 0) continue;
+            try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+                patchWavHeader(file, dataBytes);  // the last part is usually cut off without a final header
+            } catch (IOException e) {
+                Log.w(TAG, "Could not repair " + part.getName(), e);
+                continue;
+            }
+            validParts.add(part);
+            totalBytes += dataBytes;
+        }
+        long durationMs = totalBytes / 2 * 1000 / sampleRate;
+        if (durationMs < 1000) return null;
+        return new RecoveredRecording(validParts, sampleRate, durationMs);
+    }
+
+    public static void discard(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) file.delete();
+    }
+
+    private static byte[] wavHeader(int sampleRate, long dataBytes) {
+        byte[] header = new byte[WAV_HEADER_SIZE];
+        putAscii(header, 0, "RIFF");
+        putInt(header, 4, (int) (36 + dataBytes));
+        putAscii(header, 8, "WAVE");
+        putAscii(header, 12, "fmt ");
+        putInt(header, 16, 16);
+        putShort(header, 20, 1);  // PCM
+        putShort(header, 22, 1);  // mono
+        putInt(header, 24, sampleRate);
+        putInt(header, 28, sampleRate * 2);
+        putShort(header, 32, 2);
+        putShort(header, 34, 16);
+        putAscii(header, 36, "data");
+        putInt(header, 40, (int) dataBytes);
+        return header;
+    }
+
+    private static void patchWavHeader(RandomAccessFile file, long dataBytes) throws IOException {
+        long position = file.getFilePointer();
+        byte[] size = new byte[4];
+        putInt(size, 0, (int) (36 + dataBytes));
+        file.seek(4);
+        file.write(size);
+        putInt(size, 0, (int) dataBytes);
+        file.seek(40);
+        file.write(size);
+        file.seek(position);
+    }
+
+    private static void putAscii(byte[] target, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) target[offset + i] = (byte) value.charAt(i);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+        target[offset + 2] = (byte) (value >> 16);
+        target[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static void putShort(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+    }
+
+    public static class RecoveredRecording {
+        private final List<File> parts;
+        private final int sampleRate;
+        private final long durationMs;
+
+        RecoveredRecording(List<File> parts, int sampleRate, long durationMs) {
+            this.parts = parts;
+            this.sampleRate = sampleRate;
+            this.durationMs = durationMs;
+        }
+
+        public List<File> getParts() {
+            return parts;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        // replays the journaled PCM into the sink, e.g. an AudioEncoderSink to get an uploadable file
+        public void replayTo(PcmSink sink) throws IOException {
+            byte[] bytes = new byte[sampleRate * AudioCaptureEngine.FRAME_DURATION_MS / 1000 * 2];
+            short[] frame = new short[bytes.length / 2];
+            sink.onStart(sampleRate);
+            try {
+                for (File part : parts) {
+                    try (InputStream in = new FileInputStream(part)) {
+                        long skipped = 0;
+                        while (skipped < WAV_HEADER_SIZE) {
+                            long count = in.skip(WAV_HEADER_SIZE - skipped);
+                            if (count <= 0) break;
+                            skipped += count;
+                        }
+                        int filled = 0;
+                        int count;
+                        while ((count = in.read(bytes, filled, bytes.length - filled)) > 0) {
+                            filled += count;
+                            if (filled < bytes.length) continue;
+                            toShorts(bytes, filled, frame);
+                            sink.onPcm(frame, 0, filled / 2);
+                            filled = 0;
+                        }
+                        if (filled >= 2) {
+                            toShorts(bytes, filled, frame);
+                            sink.onPcm(frame, 0, filled / 2);
+                        }
+                    }
+                }
+            } finally {
+                sink.onStop();
+            }
+        }
+
+        private static void toShorts(byte[] bytes, int length, short[] target) {
+            for (int i = 0; i + 1 < length; i += 2) {
+                target[i / 2] = (short) ((bytes[i] & 0xff) | (bytes[i + 1] << 8));
+            }
+        }
+    }
+}
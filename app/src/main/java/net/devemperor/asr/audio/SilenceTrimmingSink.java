@@ -0,0 +1,98 @@
+package net.devemperor.asr.audio;
+
+import java.io.IOException;
+
+// drops leading and trailing silence and shortens long pauses before the audio reaches the downstream sink
+public class SilenceTrimmingSink implements PcmSink {
+
+    private static final int LEADING_PADDING_MS = 300;
+
+    private final PcmSink downstream;
+    private final float thresholdDb;
+    private final int maxPauseMs;
+
+    private VoiceActivityDetector vad;
+    private short[] pending;  // circular buffer holding the most recent silent samples
+    private int pendingStart = 0;
+    private int pendingLength = 0;
+    private int sampleRate;
+    private boolean speechDetected = false;
+    private long removedSamples = 0;
+
+    public SilenceTrimmingSink(PcmSink downstream, float thresholdDb, int maxPauseMs) {
+        this.downstream = downstream;
+        this.thresholdDb = thresholdDb;
+        this.maxPauseMs = maxPauseMs;
+    }
+
+    public boolean hasSpeech() {
+        return speechDetected;
+    }
+
+    public long getRemovedDurationMs() {
+        return sampleRate == 0 ? 0 : removedSamples * 1000 / sampleRate;
+    }
+
+    @Override
+    public void onStart(int sampleRate) throws IOException {
+        this.sampleRate = sampleRate;
+        vad = new VoiceActivityDetector(sampleRate, thresholdDb);
+        pending = new short[sampleRate * Math.max(maxPauseMs, LEADING_PADDING_MS) / 1000];
+        pendingStart = 0;
+        pendingLength = 0;
+        speechDetected = false;
+        removedSamples = 0;
+        downstream.onStart(sampleRate);
+    }
+
+    @Override
+    public void onPcm(short[] samples, int offset, int length) {
+        if (vad.process(samples, offset, length)) {
+            flushPending(speechDetected ? maxPauseMs : LEADING_PADDING_MS);
+            speechDetected = true;
+            downstream.onPcm(samples, offset, length);
+        } else {
+            appendPending(samples, offset, length);
+        }
+    }
+
+    @Override
+    public void onStop() {
+        removedSamples += pendingLength;  // trailing silence is never sent
+        pendingLength = 0;
+        downstream.onStop();
+    }
+
+    private void appendPending(short[] samples, int offset, int length) {
+        int capacity = pending.length;
+        if (capacity == 0) {
+            removedSamples += length;
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            int index = (pendingStart + pendingLength) % capacity;
+            pending[index] = samples[offset + i];
+            if (pendingLength < capacity) {
+                pendingLength++;
+            } else {
+                pendingStart = (pendingStart + 1) % capacity;
+                removedSamples++;
+            }
+        }
+    }
+
+    // forwards at most the last limitMs of buffered silence, keeping pauses natural but short
+    private void flushPending(int limitMs) {
+        int keep = Math.min(pendingLength, sampleRate * limitMs / 1000);
+        removedSamples += pendingLength - keep;
+
+        int capacity = pending.length;
+        int start = (pendingStart + pendingLength - keep) % capacity;
+        int firstPart = Math.min(keep, capacity - start);
+        if (firstPart > 0) downstream.onPcm(pending, start, firstPart);
+        if (keep > firstPart) downstream.onPcm(pending, 0, keep - firstPart);
+
+        pendingStart = 0;
+        pendingLength = 0;
+    }
+}
@@ -0,0 +1,87 @@
+package net.devemperor.asr.audio;
+
+// frame-based voice activity detection using short-term energy and zero-crossing rate with an adaptive noise floor
+public class VoiceActivityDetector {
+
+    private static final float MIN_SPEECH_LEVEL_DB = -55f;
+    private static final float INITIAL_NOISE_FLOOR_DB = -60f;
+    private static final float NOISE_FLOOR_ADAPTATION = 0.02f;
+    private static final float FRICATIVE_ZCR = 0.3f;
+    private static final int ONSET_DURATION_MS = 60;
+    static final int HANGOVER_DURATION_MS = 300;
+
+    private final int sampleRate;
+    private final float thresholdDb;
+
+    private float noiseFloorDb = INITIAL_NOISE_FLOOR_DB;
+    private float lastLevelDb = -96f;
+    private int speechRunMs = 0;
+    private int hangoverMs = 0;
+    private boolean speaking = false;
+
+    public VoiceActivityDetector(int sampleRate, float thresholdDb) {
+        this.sampleRate = sampleRate;
+        this.thresholdDb = thresholdDb;
+    }
+
+    // maps the 1..10 sensitivity preference to the required level above the noise floor
+    public static float thresholdForSensitivity(int sensitivity) {
+        int clamped = Math.max(1, Math.min(10, sensitivity));
+        return 6f + (10 - clamped) * 1.5f;
+    }
+
+    // returns true while the frame belongs to speech (including a short hangover after each word)
+    public boolean process(short[] samples, int offset, int length) {
+        if (length <= 0) return speaking;
+
+        long sumSquares = 0;
+        int zeroCrossings = 0;
+        short previous = samples[offset];
+        for (int i = offset; i < offset + length; i++) {
+            short sample = samples[i];
+            sumSquares += (long) sample * sample;
+            if ((sample >= 0) != (previous >= 0)) zeroCrossings++;
+            previous = sample;
+        }
+        double rms = Math.sqrt((double) sumSquares / length);
+        float levelDb = rms < 1 ? -96f : (float) (20 * Math.log10(rms / 32768.0));
+        float zcr = (float) zeroCrossings / length;
+        lastLevelDb = levelDb;
+
+        boolean voiced = levelDb > Math.max(noiseFloorDb + thresholdDb, MIN_SPEECH_LEVEL_DB);
+        boolean fricative = zcr > FRICATIVE_ZCR && levelDb > Math.max(noiseFloorDb + thresholdDb / 2, MIN_SPEECH_LEVEL_DB);
+        int frameMs = length * 1000 / sampleRate;
+
+        if (voiced || fricative) {
+            speechRunMs += frameMs;
+            if (speechRunMs >= ONSET_DURATION_MS) {
+                speaking = true;
+                hangoverMs = HANGOVER_DURATION_MS;
+            }
+        } else {
+            speechRunMs = 0;
+            if (levelDb < noiseFloorDb) {
+                noiseFloorDb = levelDb;  // follow drops in background noise immediately
+            } else {
+                noiseFloorDb += (levelDb - noiseFloorDb) * NOISE_FLOOR_ADAPTATION;
+            }
+            if (speaking) {
+                hangoverMs -= frameMs;
+                if (hangoverMs <= 0) speaking = false;
+            }
+        }
+        return speaking;
+    }
+
+    public boolean isSpeaking() {
+        return speaking;
+    }
+
+    public float getLastLevelDb() {
+        return lastLevelDb;
+    }
+
+    public float getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+}
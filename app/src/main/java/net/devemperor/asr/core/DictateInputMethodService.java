@@ -22,10 +22,14 @@ import android.media.AudioDeviceInfo;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
 import android.media.MediaRecorder;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.text.InputType;
@@ -62,21 +66,54 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.StaggeredGridLayoutManager;
 
 import com.google.android.material.button.MaterialButton;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
+import com.openai.client.OpenAIClient;
+import com.openai.core.RequestOptions;
+import com.openai.core.http.StreamResponse;
+import com.openai.errors.OpenAIIoException;
 import com.openai.models.audio.AudioResponseFormat;
 import com.openai.models.audio.transcriptions.Transcription;
 import com.openai.models.audio.transcriptions.TranscriptionCreateParams;
+import com.openai.models.audio.transcriptions.TranscriptionStreamEvent;
 import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionStreamOptions;
+import com.openai.models.completions.CompletionUsage;
 
 import net.devemperor.asr.BuildConfig;
 import net.devemperor.asr.DictateUtils;
 import net.devemperor.asr.R;
+import net.devemperor.asr.audio.AudioCaptureEngine;
+import net.devemperor.asr.audio.AudioEncoderSink;
+import net.devemperor.asr.audio.AudioFileDecoder;
+import net.devemperor.asr.audio.CaptureProfile;
+import net.devemperor.asr.audio.EndpointingSink;
+import net.devemperor.asr.audio.LevelMeterSink;
+import net.devemperor.asr.audio.PcmSegmenter;
+import net.devemperor.asr.audio.PcmSinkGroup;
+import net.devemperor.asr.audio.RecordingJournal;
+import net.devemperor.asr.audio.SilenceTrimmingSink;
+import net.devemperor.asr.audio.VoiceActivityDetector;
+import net.devemperor.asr.jobs.JobModel;
+import net.devemperor.asr.jobs.JobsDatabaseHelper;
+import net.devemperor.asr.network.ApiClientPool;
+import net.devemperor.asr.network.CancellationScope;
+import net.devemperor.asr.network.ConnectionPrewarmer;
+import net.devemperor.asr.network.FailoverChain;
+import net.devemperor.asr.network.HedgedRequest;
+import net.devemperor.asr.network.InFlightRequests;
+import net.devemperor.asr.network.LatencyTracker;
+import net.devemperor.asr.network.RequestTracer;
+import net.devemperor.asr.network.RetryPolicy;
+import net.devemperor.asr.network.TimeoutPolicy;
+import net.devemperor.asr.network.TranscriptCache;
+import net.devemperor.asr.rewording.FusedPromptChain;
 import net.devemperor.asr.rewording.PromptEditActivity;
 import net.devemperor.asr.rewording.PromptModel;
 import net.devemperor.asr.rewording.PromptsDatabaseHelper;
 import net.devemperor.asr.rewording.PromptsKeyboardAdapter;
 import net.devemperor.asr.rewording.PromptsOverviewActivity;
+import net.devemperor.asr.rewording.SpokenCommandFormatter;
 import net.devemperor.asr.settings.DictateSettingsActivity;
 import net.devemperor.asr.usage.UsageDatabaseHelper;
 
@@ -85,17 +122,25 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 // MAIN CLASS
 public class DictateInputMethodService extends InputMethodService {
@@ -155,9 +200,36 @@ public class DictateInputMethodService extends InputMethodService {
     private List<Integer> swipeWordBoundaries = null;
     private int swipeSelectedSteps = 0;
 
-    private MediaRecorder recorder;
+    private AudioCaptureEngine captureEngine;
+    private AudioCaptureEngine preparedCaptureEngine;  // AudioRecord created while the keyboard is shown, mic not yet open
+    private long recordingRequestedNanos;
+    private SilenceTrimmingSink silenceTrimmingSink;
+    private LevelMeterSink levelMeterSink;
+    private AudioEncoderSink.Format audioFormat = AudioEncoderSink.Format.AAC_M4A;
+    private CaptureProfile captureProfile = CaptureProfile.HIGH_QUALITY;
+    private static final long MAX_UPLOAD_BYTES = 24L * 1024 * 1024;  // providers reject uploads above 25 MB
+    private static final int MAX_PARALLEL_UPLOADS = 3;
+    private ExecutorService chunkApiThread;
+    private final List<Future<String>> chunkTranscriptions = new ArrayList<>();
+    private List<Future<String>> pendingChunkTranscriptions;  // handed from stopRecording to startWhisperApiRequest
+    private PcmSegmenter chunkSegmenter;
+    private Set<String> transcriptionSources;  // provider:model of every answer the current dictation is made of, only cached if the primary gave them all
+    private RecordingJournal.RecoveredRecording recoveredRecording;  // offered to the user after the keyboard was closed mid-dictation
+    private Future<String> recoveredTranscription;  // text of a resumed recording, put in front of the new dictation
     private ExecutorService speechApiThread;
+    private ExecutorService captureStopThread;
+    private int pendingCaptureStops = 0;  // main thread only
+    private Object pendingRecordingStop;  // the stopped recording that is still being finalized before it gets sent
     private ExecutorService rewordingApiThread;
+    private static final int MAX_PARALLEL_PROMPTS = 3;
+    private ExecutorService promptsExecutor;
+    private static final InFlightRequests<String> inFlightRewordings = new InFlightRequests<>();
+    private final Object rewordingLock = new Object();
+    private Future<?> activeRewording;  // the prompt (or queued chain) started last, older ones are cancelled
+    private CancellationScope activeRewordingScope;  // aborts the HTTP calls of activeRewording, a blocked read does not react to interrupts
+    private String activeRewordingKey;
+    private volatile boolean showingStreamedText = false;
+    private static final Set<String> fusionRejectingModels = Collections.synchronizedSet(new HashSet<>());  // provider:model pairs that did not follow the fused form
     private File audioFile;
     private Vibrator vibrator;
     private SharedPreferences sp;
@@ -178,6 +250,7 @@ public class DictateInputMethodService extends InputMethodService {
     private ConstraintLayout dictateKeyboardView;
     private MaterialButton settingsButton;
     private MaterialButton recordButton;
+    private WaveformView recordWaveform;
     private MaterialButton resendButton;
     private MaterialButton backspaceButton;
     private MaterialButton switchButton;
@@ -224,10 +297,13 @@ public class DictateInputMethodService extends InputMethodService {
 
     UsageDatabaseHelper usageDb;
 
-    private interface PromptResultCallback {
-        void onSuccess(String text);
-        void onFailure();
-    }
+    JobsDatabaseHelper jobsDb;
+    private TranscriptCache transcriptCache;
+    private static final int MAX_PARALLEL_JOBS = 2;
+    private static final int MAX_JOB_ATTEMPTS = 5;
+    private ExecutorService jobsExecutor;
+    private final Set<Long> runningJobIds = new HashSet<>();
+    private ConnectivityManager.NetworkCallback networkCallback;
 
     // start method that is called when user opens the keyboard
     @SuppressLint("ClickableViewAccessibility")
@@ -245,6 +321,9 @@ public class DictateInputMethodService extends InputMethodService {
         sp = getSharedPreferences("net.devemperor.asr", MODE_PRIVATE);
         promptsDb = new PromptsDatabaseHelper(this);
         usageDb = new UsageDatabaseHelper(this);
+        jobsDb = new JobsDatabaseHelper(this);
+        transcriptCache = new TranscriptCache(this);
+        registerNetworkCallback();
         vibrationEnabled = sp.getBoolean("net.devemperor.asr.vibration", true);
         currentInputLanguagePos = sp.getInt("net.devemperor.asr.input_language_pos", 0);
 
@@ -258,6 +337,7 @@ public class DictateInputMethodService extends InputMethodService {
 
         settingsButton = dictateKeyboardView.findViewById(R.id.settings_btn);
         recordButton = dictateKeyboardView.findViewById(R.id.record_btn);
+        recordWaveform = dictateKeyboardView.findViewById(R.id.record_waveform);
         resendButton = dictateKeyboardView.findViewById(R.id.resend_btn);
         backspaceButton = dictateKeyboardView.findViewById(R.id.backspace_btn);
         switchButton = dictateKeyboardView.findViewById(R.id.switch_btn);
@@ -541,15 +621,11 @@ public class DictateInputMethodService extends InputMethodService {
 
             cancelScoWaitIfAny();  // cancel any pending SCO wait
 
-            if (recorder != null) {
-                try { recorder.stop(); } catch (RuntimeException ignored) {}
-                recorder.release();
-                recorder = null;
-
-                if (recordTimeRunnable != null) {
-                    recordTimeHandler.removeCallbacks(recordTimeRunnable);
-                }
-            }
+            pendingRecordingStop = null;  // a recording that is still being finalized is discarded as well
+            stopCaptureEngine(() -> RecordingJournal.discard(getJournalDir()));  // the journal sink writes until the drain is done
+            cancelChunkTranscriptions();
+            cancelRecoveredTranscription();
+            prepareCaptureEngine();
             if (audioFocusEnabled) am.abandonAudioFocusRequest(audioFocusRequest);
             if (isBluetoothScoStarted) am.stopBluetoothSco();
 
@@ -623,10 +699,10 @@ public class DictateInputMethodService extends InputMethodService {
 
         pauseButton.setOnClickListener(v -> {
             vibrate();
-            if (recorder != null) {
+            if (captureEngine != null) {
                 if (isPaused) {
                     if (audioFocusEnabled) am.requestAudioFocus(audioFocusRequest);
-                    recorder.resume();
+                    captureEngine.resume();
                     recordTimeHandler.post(recordTimeRunnable);
                     pauseButton.setForeground(AppCompatResources.getDrawable(context, R.drawable.ic_baseline_pause_24));
                     isPaused = false;
@@ -634,7 +710,7 @@ public class DictateInputMethodService extends InputMethodService {
                     if (recordPulseY != null && recordPulseY.isPaused()) recordPulseY.resume();
                 } else {
                     if (audioFocusEnabled) am.abandonAudioFocusRequest(audioFocusRequest);
-                    recorder.pause();
+                    captureEngine.pause();
                     recordTimeHandler.removeCallbacks(recordTimeRunnable);
                     pauseButton.setForeground(AppCompatResources.getDrawable(context, R.drawable.ic_baseline_mic_24));
                     isPaused = true;
@@ -728,6 +804,11 @@ public class DictateInputMethodService extends InputMethodService {
             hideNumberPanel();
         });
 
+        runningPromptTv.setOnClickListener(v -> {  // tapping the running prompt cancels it, also mid-stream
+            vibrate();
+            cancelRewording();
+        });
+
         emojiPickerView.setOnEmojiPickedListener(emoji -> {
             vibrate();
             InputConnection inputConnection = getCurrentInputConnection();
@@ -792,25 +873,34 @@ public class DictateInputMethodService extends InputMethodService {
     }
 
     // method is called if the user closed the keyboard
+    @Override
+    public void onDestroy() {
+        if (networkCallback != null) {
+            ConnectivityManager connectivityManager = getSystemService(ConnectivityManager.class);
+            if (connectivityManager != null) connectivityManager.unregisterNetworkCallback(networkCallback);
+            networkCallback = null;
+        }
+        if (jobsExecutor != null) jobsExecutor.shutdownNow();  // unfinished jobs stay queued
+        if (promptsExecutor != null) promptsExecutor.shutdownNow();
+        if (captureStopThread != null) captureStopThread.shutdown();  // let the last recording finish writing
+        super.onDestroy();
+    }
+
     @Override
     public void onFinishInputView(boolean finishingInput) {
         super.onFinishInputView(finishingInput);
 
         cancelScoWaitIfAny();  // cancel any pending SCO wait
 
-        if (recorder != null) {
-            try {
-                recorder.stop();
-            } catch (RuntimeException ignored) { }
-            recorder.release();
-            recorder = null;
-
-            if (recordTimeRunnable != null) {
-                recordTimeHandler.removeCallbacks(recordTimeRunnable);
-            }
-        }
+        pendingRecordingStop = null;
+        recoveredRecording = null;  // offered again from the journal next time
+        stopCaptureEngine();  // the journal is kept, so the next onStartInputView can offer to recover the recording
+        releasePreparedCaptureEngine();
+        cancelChunkTranscriptions();
+        cancelRecoveredTranscription();
 
         if (speechApiThread != null) speechApiThread.shutdownNow();
+        cancelRewording();  // also aborts its HTTP calls, an interrupt alone leaves them running
         if (rewordingApiThread != null) rewordingApiThread.shutdownNow();
 
         if (bluetoothScoReceiver != null) {
@@ -846,6 +936,7 @@ public class DictateInputMethodService extends InputMethodService {
         super.onStartInputView(info, restarting);
         updateEnterButtonIcon(info);
         initAndRegisterBluetoothReceiver();
+        prepareCaptureEngine();
 
         if (sp.getBoolean("net.devemperor.asr.rewording_enabled", true)) {
             promptsCl.setVisibility(View.VISIBLE);
@@ -1013,6 +1104,16 @@ public class DictateInputMethodService extends InputMethodService {
             showInfo("donate");
         }
 
+        // offer to continue or transcribe a recording that was interrupted
+        if (!isRecording && !isPreparingRecording && (recoveredRecording = RecordingJournal.findRecoverable(getJournalDir())) != null) {
+            showInfo("recovered_recording");
+        } else if (jobsDb.countDone() > 0) {
+            showInfo("offline_results");
+        } else if (jobsDb.countFailed() > 0) {
+            showInfo("failed_jobs");
+        }
+        if (isOnline()) runPendingJobs();
+
         // start audio file transcription if user selected an audio file
         if (!sp.getString("net.devemperor.asr.transcription_audio_file", "").isEmpty()) {
             audioFile = new File(getCacheDir(), sp.getString("net.devemperor.asr.transcription_audio_file", ""));
@@ -1300,10 +1401,25 @@ public class DictateInputMethodService extends InputMethodService {
 
     private void startRecording() {
         if (isRecording || isPreparingRecording) return;  // prevent re-entrance
+        if (pendingCaptureStops > 0) {  // the previous recording is still draining into its sinks and the journal
+            isPreparingRecording = true;
+            recordButton.setEnabled(false);
+            stopCaptureEngine(() -> {
+                isPreparingRecording = false;
+                recordButton.setEnabled(true);
+                if (isInputViewShown()) startRecording();
+            });
+            return;
+        }
+        recordingRequestedNanos = SystemClock.elapsedRealtimeNanos();
 
         prepareAutoApplyQueue();
+        recoveredRecording = null;  // the offer is gone once a recording starts, only continueRecoveredRecording() resumes it
+        prewarmApiConnections();  // the network is idle while the user speaks
 
-        audioFile = new File(getCacheDir(), "audio.m4a");
+        audioFormat = AudioEncoderSink.Format.fromPreference(sp.getString("net.devemperor.asr.audio_format", "aac"));
+        captureProfile = getCaptureProfile();
+        audioFile = new File(getCacheDir(), "audio." + audioFormat.getFileExtension());
         sp.edit().putString("net.devemperor.asr.last_file_name", audioFile.getName()).apply();
 
         boolean useBluetoothMic = sp.getBoolean("net.devemperor.asr.use_bluetooth_mic", false);  // read preference: only use BT mic if enabled
@@ -1337,22 +1453,72 @@ public class DictateInputMethodService extends InputMethodService {
     }
 
     private void proceedStartRecording(int audioSource, boolean useBtForThisRecording) {
-        // Build and start MediaRecorder with the decided audio source
-        recorder = new MediaRecorder();
-        recorder.setAudioSource(audioSource);
-        recorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-        recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-        recorder.setAudioEncodingBitRate(64000);
-        recorder.setAudioSamplingRate(44100);
-        recorder.setOutputFile(audioFile);
+        // Build and start the PCM capture engine with the decided audio source, encoding into audioFile
+        int bitRate = captureProfile.getBitRate(audioFormat, sp.getBoolean("net.devemperor.asr.adaptive_bitrate", true),
+                sp.getLong("net.devemperor.asr.upload_throughput_kbps", -1));
+        int sampleRate = captureProfile.getSampleRate(audioFormat);
+        Log.d("DictateInputMethodService", "Capture profile " + captureProfile + ": " + sampleRate + " Hz, " + bitRate + " bps");
+        if (preparedCaptureEngine != null && preparedCaptureEngine.getAudioSource() == audioSource
+                && preparedCaptureEngine.getSampleRate() == sampleRate) {
+            captureEngine = preparedCaptureEngine;
+            preparedCaptureEngine = null;
+        } else {
+            releasePreparedCaptureEngine();
+            captureEngine = new AudioCaptureEngine(audioSource, sampleRate);
+        }
+        float vadThresholdDb = VoiceActivityDetector.thresholdForSensitivity(sp.getInt("net.devemperor.asr.vad_sensitivity", 5));
+        PcmSinkGroup recordingSinks = new PcmSinkGroup().add(new AudioEncoderSink(audioFile, audioFormat, bitRate));
+        if (sp.getBoolean("net.devemperor.asr.recording_journal", true)) recordingSinks.add(new RecordingJournal(getJournalDir()));
+        cancelChunkTranscriptions();
+        Set<String> sources = ConcurrentHashMap.newKeySet();
+        transcriptionSources = sources;
+        if (sp.getBoolean("net.devemperor.asr.chunked_transcription", false)) {  // transcribe finished parts while the user keeps talking
+            File chunkDir = new File(getCacheDir(), "chunks");
+            File[] oldChunks = chunkDir.listFiles();
+            if (oldChunks != null) for (File chunk : oldChunks) chunk.delete();
+
+            String language = currentInputLanguageValue;
+            String stylePrompt = getStylePrompt();
+            chunkApiThread = Executors.newFixedThreadPool(2);
+            chunkSegmenter = new PcmSegmenter(chunkDir, audioFormat, bitRate, vadThresholdDb, 20000, 120000, 600,
+                    (index, file, durationMs, hasSpeech) -> {
+                        if (!hasSpeech) return;
+                        ExecutorService executor = chunkApiThread;
+                        if (executor == null || executor.isShutdown()) return;
+                        synchronized (chunkTranscriptions) {
+                            chunkTranscriptions.add(executor.submit(() -> requestTranscriptionFromApi(file, language, stylePrompt, sources)));
+                        }
+                    });
+            recordingSinks.add(chunkSegmenter);
+        }
+        if (sp.getBoolean("net.devemperor.asr.level_meter", true)) {  // fed before trimming, so it shows what the mic really picks up
+            levelMeterSink = new LevelMeterSink(48);
+            captureEngine.addSink(levelMeterSink);
+        } else {
+            levelMeterSink = null;
+        }
+        if (sp.getBoolean("net.devemperor.asr.auto_stop", false)) {  // stop and send by itself after the user stopped talking
+            AudioCaptureEngine engine = captureEngine;
+            captureEngine.addSink(new EndpointingSink(vadThresholdDb, sp.getInt("net.devemperor.asr.auto_stop_silence", 1500),
+                    () -> mainHandler.post(() -> {
+                        if (captureEngine == engine && isRecording && !isPaused) stopRecording();
+                    })));
+        }
+        if (sp.getBoolean("net.devemperor.asr.silence_trimming", false)) {  // strip silence before it gets encoded and uploaded
+            silenceTrimmingSink = new SilenceTrimmingSink(recordingSinks, vadThresholdDb, sp.getInt("net.devemperor.asr.max_pause_duration", 800));
+            captureEngine.addSink(silenceTrimmingSink);
+        } else {
+            silenceTrimmingSink = null;
+            captureEngine.addSink(recordingSinks);
+        }
 
         if (audioFocusEnabled) am.requestAudioFocus(audioFocusRequest);
 
         try {
-            recorder.prepare();
-            recorder.start();
+            captureEngine.start(recordingRequestedNanos);
         } catch (IOException e) {
             sendLogToCrashlytics(e);
+            captureEngine = null;
             // reset UI/state on failure
             isRecording = false;
             isPreparingRecording = false;
@@ -1389,29 +1555,171 @@ public class DictateInputMethodService extends InputMethodService {
             resendButton.setVisibility(View.GONE);
             elapsedTime = 0;
             recordTimeHandler.post(recordTimeRunnable);
+            showLevelMeter(levelMeterSink);
         });
     }
 
     private void stopRecording() {
+        if (pendingRecordingStop != null) return;  // already stopping
         cancelScoWaitIfAny();  // cancel any pending SCO wait
 
-        if (recorder != null) {
-            try {
-                recorder.stop();
-            } catch (RuntimeException ignored) { }
-            recorder.release();
-            recorder = null;
+        Object stop = new Object();
+        pendingRecordingStop = stop;
+        recordButton.setEnabled(false);  // until audioFile is finalized
+        stopCaptureEngine(() -> {
+            if (pendingRecordingStop != stop) return;  // trashed or keyboard closed in the meantime
+            pendingRecordingStop = null;
+            finishStoppedRecording();
+        });
+        prepareCaptureEngine();
 
+        updateKeepScreenAwake(false);
+    }
+
+    private void finishStoppedRecording() {
+        if (isBluetoothScoStarted) am.stopBluetoothSco();
+
+        synchronized (chunkTranscriptions) {
+            if (chunkApiThread != null) {
+                if (chunkSegmenter != null && chunkSegmenter.getFailure() != null) {
+                    // the chunks miss the audio after the failure, the complete recording is sent instead
+                    for (Future<String> chunk : chunkTranscriptions) chunk.cancel(true);
+                    pendingChunkTranscriptions = null;
+                } else {
+                    pendingChunkTranscriptions = new ArrayList<>(chunkTranscriptions);
+                }
+                chunkTranscriptions.clear();
+                chunkApiThread.shutdown();  // lets the submitted chunks finish, a new recording gets its own pool
+                chunkApiThread = null;
+            }
+        }
+
+        if (silenceTrimmingSink != null) {
+            boolean hasSpeech = silenceTrimmingSink.hasSpeech();
+            Log.d("DictateInputMethodService", "Silence trimming removed " + silenceTrimmingSink.getRemovedDurationMs() + " ms");
+            silenceTrimmingSink = null;
+            if (!hasSpeech) {  // nothing but silence was recorded, so there is nothing to upload or pay for
+                abortRecordingWithoutSpeech();
+                return;
+            }
+        }
+
+        RecordingJournal.discard(getJournalDir());  // audioFile is complete now
+        startWhisperApiRequest();
+    }
+
+    private void abortRecordingWithoutSpeech() {
+        cancelChunkTranscriptions();
+        cancelRecoveredTranscription();
+        RecordingJournal.discard(getJournalDir());
+        if (audioFile != null && audioFile.exists()) audioFile.delete();
+        if (audioFocusEnabled) am.abandonAudioFocusRequest(audioFocusRequest);
+
+        isRecording = false;
+        isPaused = false;
+        livePrompt = false;
+        autoSwitchKeyboard = false;
+        clearQueuedPrompts();
+        recordingUsesBluetooth = false;
+        updatePromptButtonsEnabledState();
+        recordButton.setText(getDictateButtonText());
+        applyRecordingIconState(false);
+        recordButton.setCompoundDrawablesRelativeWithIntrinsicBounds(R.drawable.ic_baseline_mic_20, 0, R.drawable.ic_baseline_folder_open_20, 0);
+        recordButton.setEnabled(true);
+        pauseButton.setVisibility(View.GONE);
+        pauseButton.setForeground(AppCompatResources.getDrawable(this, R.drawable.ic_baseline_pause_24));
+        trashButton.setVisibility(View.GONE);
+        showInfo("no_speech");
+    }
+
+    private void stopCaptureEngine() {
+        stopCaptureEngine(null);
+    }
+
+    // draining the encoders can take a while, so engines are stopped one after another on their own thread;
+    // onStopped runs on the main thread once this and every earlier engine have finished
+    private void stopCaptureEngine(Runnable onStopped) {
+        AudioCaptureEngine engine = captureEngine;
+        captureEngine = null;
+        if (engine != null) {
+            levelMeterSink = null;
+            showLevelMeter(null);
             if (recordTimeRunnable != null) {
                 recordTimeHandler.removeCallbacks(recordTimeRunnable);
             }
+        } else if (onStopped == null) {
+            return;
         }
 
-        updateKeepScreenAwake(false);
+        if (captureStopThread == null) captureStopThread = Executors.newSingleThreadExecutor();
+        pendingCaptureStops++;
+        captureStopThread.execute(() -> {
+            if (engine != null) {
+                engine.stop();
+                recordStartLatency(engine.getStartLatencyMs());
+            }
+            mainHandler.post(() -> {
+                pendingCaptureStops--;
+                if (onStopped != null) onStopped.run();
+            });
+        });
+    }
 
-        if (isBluetoothScoStarted) am.stopBluetoothSco();
+    private void showLevelMeter(LevelMeterSink sink) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mainHandler.post(() -> showLevelMeter(sink));
+            return;
+        }
+        if (recordWaveform == null) return;
+        if (sink == null) {
+            recordWaveform.stop();
+            recordWaveform.setVisibility(View.GONE);
+        } else {
+            recordWaveform.setColor(recordButton.getCurrentTextColor());
+            recordWaveform.setSource(sink);
+            recordWaveform.setVisibility(View.VISIBLE);
+            recordWaveform.start();
+        }
+    }
 
-        startWhisperApiRequest();
+    // creates the AudioRecord for the built-in mic ahead of time, the mic itself is only opened after a tap
+    private void prepareCaptureEngine() {
+        if (captureEngine != null || isPreparingRecording) return;
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) return;
+
+        AudioEncoderSink.Format format = AudioEncoderSink.Format.fromPreference(sp.getString("net.devemperor.asr.audio_format", "aac"));
+        int sampleRate = getCaptureProfile().getSampleRate(format);
+        if (preparedCaptureEngine != null && preparedCaptureEngine.getSampleRate() == sampleRate) return;
+        releasePreparedCaptureEngine();
+
+        AudioCaptureEngine engine = new AudioCaptureEngine(MediaRecorder.AudioSource.MIC, sampleRate);
+        try {
+            engine.prepare();
+            preparedCaptureEngine = engine;
+        } catch (IOException e) {
+            Log.w("DictateInputMethodService", "Could not prepare capture engine", e);
+        }
+    }
+
+    private void releasePreparedCaptureEngine() {
+        if (preparedCaptureEngine == null) return;
+        preparedCaptureEngine.release();
+        preparedCaptureEngine = null;
+    }
+
+    private CaptureProfile getCaptureProfile() {
+        int transcriptionProvider = sp.getInt("net.devemperor.asr.transcription_provider", 0);
+        return CaptureProfile.fromPreference(sp.getString("net.devemperor.asr.capture_profile", "auto"), getTranscriptionModel(transcriptionProvider));
+    }
+
+    private void recordStartLatency(long latencyMs) {
+        if (latencyMs < 0) return;
+        long average = sp.getLong("net.devemperor.asr.diag_start_latency_avg_ms", -1);
+        average = average < 0 ? latencyMs : (average * 4 + latencyMs) / 5;  // moving average over the last few recordings
+        sp.edit().putLong("net.devemperor.asr.diag_start_latency_ms", latencyMs)
+                .putLong("net.devemperor.asr.diag_start_latency_avg_ms", average)
+                .apply();
+        Log.d("DictateInputMethodService", "Recording start latency: " + latencyMs + " ms");
     }
 
     private void updateKeepScreenAwake(boolean keepAwake) {
@@ -1466,87 +1774,68 @@ public class DictateInputMethodService extends InputMethodService {
 
         if (audioFocusEnabled) am.abandonAudioFocusRequest(audioFocusRequest);
 
-        String stylePrompt;
-        switch (sp.getInt("net.devemperor.asr.style_prompt_selection", 1)) {
-            case 1:
-                stylePrompt = DictateUtils.getPunctuationPromptForLanguage(currentInputLanguageValue);
-                break;
-            case 2:
-                stylePrompt = sp.getString("net.devemperor.asr.style_prompt_custom_text", "");
-                break;
-            default:
-                stylePrompt = "";
-        }
+        String stylePrompt = getStylePrompt();
+        String language = currentInputLanguageValue;
+        File fileToTranscribe = audioFile;
+        List<Future<String>> chunks = pendingChunkTranscriptions;
+        pendingChunkTranscriptions = null;
+        Future<String> recovered = recoveredTranscription;
+        recoveredTranscription = null;
+        Set<String> sources = transcriptionSources != null ? transcriptionSources : ConcurrentHashMap.newKeySet();
+        transcriptionSources = null;
 
         speechApiThread = Executors.newSingleThreadExecutor();
         speechApiThread.execute(() -> {
+            if (!isOnline() && queueTranscriptionJob(fileToTranscribe, language, stylePrompt)) {  // no point waiting for the request to time out
+                if (chunks != null) for (Future<String> chunk : chunks) chunk.cancel(true);
+                mainHandler.post(() -> {
+                    showInfo("queued_offline");
+                    restoreRecordButton();
+                });
+                return;
+            }
+
             try {
-                int transcriptionProvider = sp.getInt("net.devemperor.asr.transcription_provider", 0);
-                String apiHost = getResources().getStringArray(R.array.dictate_api_providers_values)[transcriptionProvider];
-                if (apiHost.equals("custom_server")) apiHost = sp.getString("net.devemperor.asr.transcription_custom_host", getString(R.string.dictate_custom_server_host_hint));
-
-                String apiKey = sp.getString("net.devemperor.asr.transcription_api_key", sp.getString("net.devemperor.asr.api_key", "NO_API_KEY")).replaceAll("[^ -~]", "");
-                String proxyHost = sp.getString("net.devemperor.asr.proxy_host", getString(R.string.dictate_settings_proxy_hint));
-
-                String transcriptionModel = "";
-                switch (transcriptionProvider) {  // for upgrading: use old transcription_model preference
-                    case 0: transcriptionModel = sp.getString("net.devemperor.asr.transcription_openai_model", sp.getString("net.devemperor.asr.transcription_model", "gpt-4o-mini-transcribe")); break;
-                    case 1: transcriptionModel = sp.getString("net.devemperor.asr.transcription_groq_model", "whisper-large-v3-turbo"); break;
-                    case 2: transcriptionModel = sp.getString("net.devemperor.asr.transcription_custom_model", getString(R.string.dictate_custom_transcription_model_hint));
+                String cacheKey = getTranscriptCacheKey(fileToTranscribe, language, stylePrompt);
+                String resultText = cacheKey != null ? transcriptCache.get(cacheKey) : null;
+                boolean cached = resultText != null;
+                boolean streamed = false;
+                if (cached) {
+                    Log.d("DictateInputMethodService", "Using cached transcript");  // e.g. resend after a failed prompt
+                    if (chunks != null) for (Future<String> chunk : chunks) chunk.cancel(true);
+                } else if (chunks != null && !chunks.isEmpty()) {
+                    resultText = collectChunkTranscriptions(chunks, language);  // only the last part is usually still pending here
+                } else if (fileToTranscribe.length() > MAX_UPLOAD_BYTES) {
+                    resultText = transcribeLargeFile(fileToTranscribe, language, stylePrompt, sources);
+                } else if (recovered == null && canStreamTranscription()) {
+                    resultText = requestStreamingTranscription(fileToTranscribe, language, stylePrompt, sources);
+                    streamed = true;
+                } else {
+                    resultText = requestTranscriptionFromApi(fileToTranscribe, language, stylePrompt, sources);
                 }
-
-                OpenAIOkHttpClient.Builder clientBuilder = OpenAIOkHttpClient.builder()
-                        .apiKey(apiKey)
-                        .baseUrl(apiHost)
-                        .timeout(Duration.ofSeconds(120));
-
-                TranscriptionCreateParams.Builder transcriptionBuilder = TranscriptionCreateParams.builder()
-                        .file(audioFile.toPath())
-                        .model(transcriptionModel)
-                        .responseFormat(AudioResponseFormat.JSON);  // gpt-4o-transcribe only supports json
-
-                if (!currentInputLanguageValue.equals("detect")) transcriptionBuilder.language(currentInputLanguageValue);
-                if (!stylePrompt.isEmpty()) transcriptionBuilder.prompt(stylePrompt);
-                if (sp.getBoolean("net.devemperor.asr.proxy_enabled", false)) {
-                    if (DictateUtils.isValidProxy(proxyHost)) DictateUtils.applyProxy(clientBuilder, sp);
+                // the key names the primary model, a fallback's or hedge backup's text must not come back for it later
+                if (cacheKey != null && !cached && sources.equals(Collections.singleton(getPrimaryTranscriptionSource()))) {
+                    transcriptCache.put(cacheKey, resultText);
                 }
-                Log.d("DictateKeyboardSerice", "Style-Prompt: " + stylePrompt);
-
-                Transcription transcription;
-                int retryCount = 0;
-                while (true) {
-                    try {
-                        transcription = clientBuilder.build().audio().transcriptions().create(transcriptionBuilder.build()).asTranscription();
-                        break;
-                    } catch (RuntimeException e) {
-                        String msg = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
-                        boolean isRetryable = !msg.contains("api key") && !msg.contains("quota") && !msg.contains("audio duration")
-                                && !msg.contains("content size limit") && !msg.contains("format");
-
-                        if (isRetryable && retryCount < 3) {
-                            retryCount++;
-                            try { Thread.sleep(3000); } catch (InterruptedException ignored) {}
-                        } else {
-                            throw e;
-                        }
-                    }
+                if (recovered != null) {
+                    resultText = joinTranscriptions(Arrays.asList(collectChunkTranscriptions(Collections.singletonList(recovered), language), resultText), language);
                 }
-                String resultText = transcription.text().strip();  // Groq sometimes adds leading whitespace
-                resultText = applyAutoFormattingIfEnabled(resultText);
-
-                usageDb.edit(transcriptionModel, DictateUtils.getAudioDuration(audioFile), 0, 0, transcriptionProvider);
-
                 boolean processedByQueuedPrompts = false;
                 List<Integer> promptsToApply;
                 synchronized (queuedPromptIds) {
                     promptsToApply = new ArrayList<>(queuedPromptIds);
                 }
-                if (!promptsToApply.isEmpty()) {
-                    clearQueuedPrompts();
-                    if (!livePrompt) {
-                        processQueuedPrompts(resultText, promptsToApply);
-                        processedByQueuedPrompts = true;
-                    }
+                // formatting normally runs with the queued prompts as a cancellable rewording,
+                // but a live prompt needs its result and a keyboard switch must not happen before it is committed
+                boolean formatNow = livePrompt || (autoSwitchKeyboard && promptsToApply.isEmpty());
+                if (formatNow) resultText = applyAutoFormattingIfEnabled(resultText, currentInputLanguageValue, !livePrompt);
+                boolean fusePrompts = !livePrompt && sp.getBoolean("net.devemperor.asr.fused_prompt_chain", false);
+
+                if (streamed && (livePrompt || !promptsToApply.isEmpty())) clearComposingText();  // the raw transcript is not what gets inserted
+                if (!promptsToApply.isEmpty()) clearQueuedPrompts();
+                if ((!livePrompt && !promptsToApply.isEmpty()) || (!formatNow && isAutoFormattingEnabled())) {
+                    processQueuedPrompts(resultText, promptsToApply, fusePrompts);
+                    processedByQueuedPrompts = true;
                 }
 
                 if (!processedByQueuedPrompts && !livePrompt) {
@@ -1568,7 +1857,9 @@ public class DictateInputMethodService extends InputMethodService {
                 }
 
             } catch (RuntimeException e) {
-                if (!(e.getCause() instanceof InterruptedIOException)) {
+                if (isNetworkFailure(e) && queueTranscriptionJob(fileToTranscribe, language, stylePrompt)) {
+                    mainHandler.post(() -> showInfo("queued_offline"));
+                } else if (!(e.getCause() instanceof InterruptedIOException)) {
                     sendLogToCrashlytics(e);
                     if (vibrationEnabled) vibrator.vibrate(VibrationEffect.createOneShot(300, VibrationEffect.DEFAULT_AMPLITUDE));
                     mainHandler.post(() -> {
@@ -1597,111 +1888,688 @@ public class DictateInputMethodService extends InputMethodService {
             }
 
 
-            mainHandler.post(() -> {
-                recordButton.setText(getDictateButtonText());
-                applyRecordingIconState(false);
-                recordButton.setCompoundDrawablesRelativeWithIntrinsicBounds(R.drawable.ic_baseline_mic_20, 0, R.drawable.ic_baseline_folder_open_20, 0); // back to original icons
-                recordButton.setEnabled(true);
-            });
+            mainHandler.post(this::restoreRecordButton);
         });
     }
 
-    private void startGPTApiRequest(PromptModel model) {
-        startGPTApiRequest(model, null, null, true);
+    private void restoreRecordButton() {
+        recordButton.setText(getDictateButtonText());
+        applyRecordingIconState(false);
+        recordButton.setCompoundDrawablesRelativeWithIntrinsicBounds(R.drawable.ic_baseline_mic_20, 0, R.drawable.ic_baseline_folder_open_20, 0); // back to original icons
+        recordButton.setEnabled(true);
     }
 
-    private void startGPTApiRequest(PromptModel model, String overrideSelection, PromptResultCallback callback, boolean restorePromptsOnFinish) {
-        mainHandler.post(() -> {
-            promptsRv.setVisibility(View.GONE);
-            runningPromptTv.setVisibility(View.VISIBLE);
-            runningPromptTv.setText(model.getId() == -1 ? getString(R.string.dictate_live_prompt) : model.getName());
-            runningPromptPb.setVisibility(View.VISIBLE);
-            infoCl.setVisibility(View.GONE);
-        });
+    private boolean isOnline() {
+        ConnectivityManager connectivityManager = getSystemService(ConnectivityManager.class);
+        if (connectivityManager == null) return true;
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
 
-        String systemPrompt;
-        switch (sp.getInt("net.devemperor.asr.system_prompt_selection", 1)) {
+    // only then is a later attempt likely to work, provider errors (5xx, 429) are shown to the user
+    private boolean isNetworkFailure(RuntimeException e) {
+        if (RetryPolicy.isCancellation(e)) return false;
+        return !isOnline() || (e instanceof OpenAIIoException && !(e.getCause() instanceof InterruptedIOException));  // no connection, timeouts keep their own message
+    }
+
+    private void registerNetworkCallback() {
+        if (networkCallback != null) return;
+        ConnectivityManager connectivityManager = getSystemService(ConnectivityManager.class);
+        if (connectivityManager == null) return;
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                runPendingJobs();
+            }
+        };
+        connectivityManager.registerDefaultNetworkCallback(networkCallback);
+    }
+
+    // keeps a copy of the recording together with the queued prompts until the network is back
+    private boolean queueTranscriptionJob(File audio, String language, String stylePrompt) {
+        if (!sp.getBoolean("net.devemperor.asr.offline_queue", true) || audio == null || !audio.exists()) return false;
+        File jobsDir = new File(getFilesDir(), "jobs");
+        File jobAudio = new File(jobsDir, System.currentTimeMillis() + "_" + audio.getName());
+        try {
+            if (!jobsDir.exists() && !jobsDir.mkdirs()) throw new IOException("Could not create " + jobsDir);
+            Files.copy(audio.toPath(), jobAudio.toPath());  // the cache file is overwritten by the next recording
+        } catch (IOException e) {
+            Log.w("DictateInputMethodService", "Could not queue transcription", e);
+            return false;
+        }
+
+        List<Integer> promptIds;
+        synchronized (queuedPromptIds) {
+            promptIds = new ArrayList<>(queuedPromptIds);
+        }
+        clearQueuedPrompts();
+        livePrompt = false;
+        jobsDb.add(jobAudio.getAbsolutePath(), null, language, stylePrompt, promptIds);
+        return true;
+    }
+
+    private boolean queueRewordingJob(PromptModel model, CharSequence inputText) {
+        if (!sp.getBoolean("net.devemperor.asr.offline_queue", true) || model.getId() < 0) return false;
+        if (model.requiresSelection() && TextUtils.isEmpty(inputText)) return false;
+        jobsDb.add(null, inputText == null ? "" : inputText.toString(), currentInputLanguageValue, "",
+                Collections.singletonList(model.getId()));
+        return true;
+    }
+
+    private void runPendingJobs() {
+        if (jobsDb == null || sp == null || !sp.getBoolean("net.devemperor.asr.offline_queue", true)) return;
+        synchronized (runningJobIds) {
+            if (jobsExecutor == null) jobsExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_JOBS);
+            for (JobModel job : jobsDb.getPending(MAX_JOB_ATTEMPTS)) {
+                if (!runningJobIds.add(job.getId())) continue;
+                jobsExecutor.execute(() -> runJob(job));
+            }
+        }
+    }
+
+    private void runJob(JobModel job) {
+        try {
+            String text;
+            File audio = job.getAudioPath() != null ? new File(job.getAudioPath()) : null;
+            if (audio != null) {
+                text = audio.length() > MAX_UPLOAD_BYTES
+                        ? transcribeLargeFile(audio, job.getLanguage(), job.getStylePrompt(), null)
+                        : requestTranscriptionFromApi(audio, job.getLanguage(), job.getStylePrompt(), null);
+                text = applyAutoFormattingIfEnabled(text, job.getLanguage(), false);  // the language it was dictated in
+                List<PromptModel> prompts = getPrompts(job.getPromptIds());
+                if (isParallelPromptsEnabled()) {
+                    text = applyPromptBranches(text, splitIntoBranches(prompts), false);  // same rules as queued prompts
+                } else {
+                    for (PromptModel prompt : prompts) text = applyPromptToText(prompt, text);
+                }
+            } else {
+                text = job.getInputText();
+                for (PromptModel prompt : getPrompts(job.getPromptIds())) text = applyPromptToText(prompt, text);
+            }
+
+            jobsDb.complete(job.getId(), text);
+            if (audio != null && !audio.delete()) Log.w("DictateInputMethodService", "Could not delete " + audio);
+            if (mainHandler != null) mainHandler.post(() -> showInfo("offline_results"));
+        } catch (RuntimeException e) {
+            Log.w("DictateInputMethodService", "Queued job " + job.getId() + " failed", e);
+            if ((e.getCause() instanceof InterruptedIOException && !RetryPolicy.isTimeout(e)) || Thread.currentThread().isInterrupted()) {
+                return;  // cancelled, e.g. by the service shutting down: not the job's fault
+            }
+            if (RetryPolicy.isRetryable(e) && job.getAttempts() + 1 < MAX_JOB_ATTEMPTS) {
+                jobsDb.recordAttempt(job.getId());  // stays queued for the next time the network comes back
+            } else {
+                jobsDb.fail(job.getId());  // trying again later would not help, the user decides
+                if (mainHandler != null) mainHandler.post(() -> showInfo("failed_jobs"));
+            }
+        } finally {
+            synchronized (runningJobIds) {
+                runningJobIds.remove(job.getId());
+            }
+        }
+    }
+
+    // same rules as a queued prompt applied right after dictation
+    private String applyPromptToText(PromptModel prompt, String text) {
+        return applyPromptToText(prompt, text, null);
+    }
+
+    private String applyPromptToText(PromptModel prompt, String text, Consumer<String> onPartialText) {
+        String userPrompt = prompt.getPrompt();
+        if (userPrompt.startsWith("[") && userPrompt.endsWith("]")) return userPrompt.substring(1, userPrompt.length() - 1);
+        if (prompt.requiresSelection()) {
+            if (TextUtils.isEmpty(text)) return text;
+            userPrompt += "\n\n" + text;
+        }
+        return requestRewordingFromApi(userPrompt, getRewordingSystemPrompt(), onPartialText);
+    }
+
+    private void retryFailedJobs() {
+        for (JobModel job : jobsDb.getFailed()) jobsDb.retry(job.getId());
+        if (isOnline()) runPendingJobs();
+    }
+
+    private void deleteFailedJobs() {
+        for (JobModel job : jobsDb.getFailed()) {
+            if (job.getAudioPath() != null && !new File(job.getAudioPath()).delete()) {
+                Log.w("DictateInputMethodService", "Could not delete " + job.getAudioPath());
+            }
+            jobsDb.delete(job.getId());
+        }
+    }
+
+    private void insertJobResults() {
+        StringBuilder text = new StringBuilder();
+        for (JobModel job : jobsDb.getDone()) {
+            if (!TextUtils.isEmpty(job.getResult())) {
+                if (text.length() > 0) text.append('\n');
+                text.append(job.getResult());
+            }
+            jobsDb.delete(job.getId());
+        }
+        if (text.length() > 0) commitTextToInputConnection(text.toString());
+    }
+
+    private String getTranscriptCacheKey(File file, String language, String stylePrompt) {
+        if (file == null || !file.exists()) return null;
+        try {
+            return TranscriptCache.key(file, getPrimaryTranscriptionSource(), language, stylePrompt);
+        } catch (IOException e) {
+            Log.w("DictateInputMethodService", "Could not hash audio for the transcript cache", e);
+            return null;
+        }
+    }
+
+    private String getPrimaryTranscriptionSource() {
+        int transcriptionProvider = sp.getInt("net.devemperor.asr.transcription_provider", 0);
+        return new FailoverChain.Entry(transcriptionProvider, getTranscriptionModel(transcriptionProvider)).toString();
+    }
+
+    private String getStylePrompt() {
+        switch (sp.getInt("net.devemperor.asr.style_prompt_selection", 1)) {
             case 1:
-                systemPrompt = DictateUtils.PROMPT_REWORDING_BE_PRECISE;
-                break;
+                return DictateUtils.getPunctuationPromptForLanguage(currentInputLanguageValue);
             case 2:
-                systemPrompt = sp.getString("net.devemperor.asr.system_prompt_custom_text", "");
-                break;
+                return sp.getString("net.devemperor.asr.style_prompt_custom_text", "");
             default:
-                systemPrompt = "";
+                return "";
         }
+    }
+
+    // sources (may be null) collects the provider:model that answered
+    private String requestTranscriptionFromApi(File file, String language, String stylePrompt, Set<String> sources) {
+        int transcriptionProvider = sp.getInt("net.devemperor.asr.transcription_provider", 0);
+        List<FailoverChain.Entry> chain = new ArrayList<>();
+        chain.add(new FailoverChain.Entry(transcriptionProvider, getTranscriptionModel(transcriptionProvider)));
+        chain.addAll(FailoverChain.parse(sp.getString("net.devemperor.asr.transcription_failover_chain", "")));
+        Callable<String> primary = () -> FailoverChain.execute("transcription", chain, (entry, hasFallback) -> {
+            String text = requestTranscriptionFromProvider(entry.provider, entry.model, file, language, stylePrompt, hasFallback ? RetryPolicy.FAILOVER : RetryPolicy.DEFAULT);
+            if (sources != null) sources.add(entry.toString());
+            return text;
+        });
 
-        rewordingApiThread = Executors.newSingleThreadExecutor();
-        rewordingApiThread.execute(() -> {
+        int hedgingProvider = Integer.parseInt(sp.getString("net.devemperor.asr.hedging_provider", "1"));
+        if (!sp.getBoolean("net.devemperor.asr.hedging_enabled", false) || hedgingProvider == transcriptionProvider) {
+            try {
+                return primary.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        long audioSeconds = Math.max(0, DictateUtils.getAudioDuration(file));
+        FailoverChain.Entry backup = new FailoverChain.Entry(hedgingProvider, getTranscriptionModel(hedgingProvider));
+        return HedgedRequest.execute(primary, () -> {
+            String text = requestTranscriptionFromProvider(backup.provider, backup.model, file, language, stylePrompt, RetryPolicy.DEFAULT);
+            if (sources != null) sources.add(backup.toString());
+            return text;
+        }, getHedgingBudgetMs(transcriptionProvider, audioSeconds));
+    }
+
+    // latency is modelled as a fixed overhead plus a part that grows with the audio length (one unit per 30 s of audio)
+    private static double latencyScale(long audioSeconds) {
+        return 1 + audioSeconds / 30.0;
+    }
+
+    private RequestOptions getTranscriptionRequestOptions(int transcriptionProvider, File file, long audioSeconds) {
+        long p95 = new LatencyTracker(sp, "transcription_" + transcriptionProvider).percentile(95, 5);
+        return TimeoutPolicy.forTranscription(file.length(), audioSeconds,
+                sp.getLong("net.devemperor.asr.upload_throughput_kbps", -1),
+                p95 < 0 ? -1 : (long) (p95 * latencyScale(Math.max(0, audioSeconds))));
+    }
+
+    private long getHedgingBudgetMs(int transcriptionProvider, long audioSeconds) {
+        long p95 = new LatencyTracker(sp, "transcription_" + transcriptionProvider).percentile(95, 5);
+        long budget = p95 < 0 ? 10000 : p95;  // no history yet: only hedge clearly slow requests
+        return Math.max(1500, (long) (budget * latencyScale(audioSeconds)));
+    }
+
+    private String requestTranscriptionFromProvider(int transcriptionProvider, String transcriptionModel, File file,
+                                                    String language, String stylePrompt, RetryPolicy retryPolicy) {
+        OpenAIClient client = getTranscriptionClient(transcriptionProvider);
+        TranscriptionCreateParams transcriptionParams = buildTranscriptionParams(transcriptionModel, file, language, stylePrompt);
+        long audioSeconds = DictateUtils.getAudioDuration(file);
+        RequestOptions requestOptions = getTranscriptionRequestOptions(transcriptionProvider, file, audioSeconds);
+        RequestTracer tracer = RequestTracer.start("transcription", transcriptionProvider, transcriptionModel);
+        Transcription transcription;
+        try {
+            transcription = retryPolicy.execute(() -> {
+                tracer.attempt();
+                long requestStart = SystemClock.elapsedRealtime();
+                Transcription result = client.audio().transcriptions().create(transcriptionParams, requestOptions).asTranscription();
+                long requestDuration = SystemClock.elapsedRealtime() - requestStart;
+                recordUploadThroughput(tracer.getBytesSent(), tracer.getUploadMs());
+                // only the successful attempt, failed attempts and backoff sleeps would inflate the percentiles
+                new LatencyTracker(sp, "transcription_" + transcriptionProvider)
+                        .record((long) (requestDuration / latencyScale(Math.max(0, audioSeconds))));
+                return result;
+            });
+        } catch (RuntimeException e) {
+            tracer.finish(this, RetryPolicy.describe(e));
+            throw e;
+        }
+        tracer.finish(this, "OK");
+
+        usageDb.edit(transcriptionModel, audioSeconds, 0, 0, transcriptionProvider);
+        return transcription.text().strip();  // Groq sometimes adds leading whitespace
+    }
+
+    private TranscriptionCreateParams buildTranscriptionParams(String transcriptionModel, File file, String language, String stylePrompt) {
+        TranscriptionCreateParams.Builder transcriptionBuilder = TranscriptionCreateParams.builder()
+                .file(file.toPath())
+                .model(transcriptionModel)
+                .responseFormat(AudioResponseFormat.JSON);  // gpt-4o-transcribe only supports json
+
+        if (!language.equals("detect")) transcriptionBuilder.language(language);
+        if (!stylePrompt.isEmpty()) transcriptionBuilder.prompt(stylePrompt);
+        Log.d("DictateKeyboardSerice", "Style-Prompt: " + stylePrompt);
+        return transcriptionBuilder.build();
+    }
+
+    // only the gpt-4o transcription models send the transcript in pieces, whisper returns it at the end
+    private boolean canStreamTranscription() {
+        if (!sp.getBoolean("net.devemperor.asr.streaming_transcription", false)) return false;
+        String model = getTranscriptionModel(sp.getInt("net.devemperor.asr.transcription_provider", 0));
+        return model.startsWith("gpt-4o") && model.contains("transcribe");
+    }
+
+    // shows the words as composing text while they arrive, the final commitText replaces them
+    private String requestStreamingTranscription(File file, String language, String stylePrompt, Set<String> sources) {
+        int transcriptionProvider = sp.getInt("net.devemperor.asr.transcription_provider", 0);
+        String transcriptionModel = getTranscriptionModel(transcriptionProvider);
+        TranscriptionCreateParams transcriptionParams = buildTranscriptionParams(transcriptionModel, file, language, stylePrompt);
+        long audioSeconds = DictateUtils.getAudioDuration(file);
+        long requestStart = SystemClock.elapsedRealtime();
+        OpenAIClient client = getTranscriptionClient(transcriptionProvider);
+        RequestTracer tracer = RequestTracer.start("transcription_stream", transcriptionProvider, transcriptionModel);
+        tracer.attempt();
+
+        StringBuilder partialText = new StringBuilder();
+        String finalText = null;
+        try (StreamResponse<TranscriptionStreamEvent> stream = client.audio().transcriptions().createStreaming(transcriptionParams,
+                getTranscriptionRequestOptions(transcriptionProvider, file, audioSeconds))) {
+            Iterator<TranscriptionStreamEvent> events = stream.stream().iterator();
+            while (events.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) throw new RuntimeException(new InterruptedIOException("Transcription cancelled"));
+                TranscriptionStreamEvent event = events.next();
+                if (event.isTranscriptTextDelta()) {
+                    partialText.append(event.asTranscriptTextDelta().delta());
+                    showStreamedText(partialText.toString().stripLeading());
+                } else if (event.isTranscriptTextDone()) {
+                    finalText = event.asTranscriptTextDone().text();
+                }
+            }
+        } catch (RuntimeException e) {
+            tracer.finish(this, RetryPolicy.describe(e));
+            clearComposingText();
+            if (e.getCause() instanceof InterruptedIOException || Thread.currentThread().isInterrupted()) throw e;
+            Log.w("DictateInputMethodService", "Streaming transcription failed, sending regular request", e);
+            return requestTranscriptionFromApi(file, language, stylePrompt, sources);  // also covers retries and fallback providers
+        }
+
+        tracer.finish(this, "OK");
+        recordUploadThroughput(tracer.getBytesSent(), tracer.getUploadMs());
+        new LatencyTracker(sp, "transcription_" + transcriptionProvider)
+                .record((long) ((SystemClock.elapsedRealtime() - requestStart) / latencyScale(Math.max(0, audioSeconds))));
+        usageDb.edit(transcriptionModel, audioSeconds, 0, 0, transcriptionProvider);
+        sources.add(new FailoverChain.Entry(transcriptionProvider, transcriptionModel).toString());
+        return (finalText != null ? finalText : partialText.toString()).strip();
+    }
+
+    private void showStreamedText(String text) {
+        InputConnection inputConnection = getCurrentInputConnection();
+        if (inputConnection == null) return;
+        inputConnection.setComposingText(text, 1);
+        showingStreamedText = true;
+    }
+
+    private void clearComposingText() {
+        showingStreamedText = false;
+        InputConnection inputConnection = getCurrentInputConnection();
+        if (inputConnection == null) return;
+        inputConnection.setComposingText("", 1);
+        inputConnection.finishComposingText();
+    }
+
+    private OpenAIClient getTranscriptionClient(int transcriptionProvider) {
+        String apiHost = getResources().getStringArray(R.array.dictate_api_providers_values)[transcriptionProvider];
+        if (apiHost.equals("custom_server")) apiHost = sp.getString("net.devemperor.asr.transcription_custom_host", getString(R.string.dictate_custom_server_host_hint));
+
+        String apiKey = sp.getString("net.devemperor.asr.transcription_api_key", sp.getString("net.devemperor.asr.api_key", "NO_API_KEY"));
+        if (transcriptionProvider != sp.getInt("net.devemperor.asr.transcription_provider", 0)) {  // backup providers use their own stored key
+            String[] keySuffixes = {"openai", "groq", "custom"};
+            apiKey = sp.getString("net.devemperor.asr.transcription_api_key_" + keySuffixes[transcriptionProvider], "NO_API_KEY");
+        }
+        return ApiClientPool.get(sp, apiHost, apiKey.replaceAll("[^ -~]", ""), Duration.ofSeconds(120));
+    }
+
+    // opens connections to the hosts that will be needed once the user stops talking
+    private void prewarmApiConnections() {
+        if (!sp.getBoolean("net.devemperor.asr.prewarm_connections", true)) return;
+        int transcriptionProvider = sp.getInt("net.devemperor.asr.transcription_provider", 0);
+        ConnectionPrewarmer.prewarm(() -> getTranscriptionClient(transcriptionProvider));
+        prewarmRewordingConnection();
+    }
+
+    private void prewarmRewordingConnection() {
+        if (!sp.getBoolean("net.devemperor.asr.prewarm_connections", true)
+                || !sp.getBoolean("net.devemperor.asr.rewording_enabled", true)) return;
+        boolean hasQueuedPrompts;
+        synchronized (queuedPromptIds) {
+            hasQueuedPrompts = !queuedPromptIds.isEmpty();
+        }
+        if (!hasQueuedPrompts && !livePrompt && !sp.getBoolean("net.devemperor.asr.auto_formatting_enabled", false)) return;
+        int rewordingProvider = sp.getInt("net.devemperor.asr.rewording_provider", 0);
+        ConnectionPrewarmer.prewarm(() -> getRewordingClient(rewordingProvider));
+    }
+
+    private String getTranscriptionModel(int transcriptionProvider) {
+        switch (transcriptionProvider) {  // for upgrading: use old transcription_model preference
+            case 0: return sp.getString("net.devemperor.asr.transcription_openai_model", sp.getString("net.devemperor.asr.transcription_model", "gpt-4o-mini-transcribe"));
+            case 1: return sp.getString("net.devemperor.asr.transcription_groq_model", "whisper-large-v3-turbo");
+            case 2: return sp.getString("net.devemperor.asr.transcription_custom_model", getString(R.string.dictate_custom_transcription_model_hint));
+            default: return "";
+        }
+    }
+
+    // request time includes server processing, so this underestimates the uplink, which is fine for picking a bitrate
+    // uploadMs covers only the request body (from the RequestTracer), the server's processing time would make the link look slow
+    private void recordUploadThroughput(long bytes, long uploadMs) {
+        if (bytes < 32 * 1024 || uploadMs <= 0) return;  // tiny uploads fit into the socket buffer and look instant
+        long kbps = bytes * 8 / uploadMs;
+        long previous = sp.getLong("net.devemperor.asr.upload_throughput_kbps", -1);
+        sp.edit().putLong("net.devemperor.asr.upload_throughput_kbps", previous < 0 ? kbps : (previous * 2 + kbps) / 3).apply();
+    }
+
+    // re-encodes files above the provider limit into speech-sized parts split at pauses and transcribes them in parallel
+    private String transcribeLargeFile(File file, String language, String stylePrompt, Set<String> sources) {
+        File splitDir = new File(getCacheDir(), "split");
+        File[] oldParts = splitDir.listFiles();
+        if (oldParts != null) for (File part : oldParts) part.delete();
+
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL_UPLOADS);
+        List<Future<String>> parts = new ArrayList<>();
+        try {
+            CaptureProfile profile = CaptureProfile.SPEECH;
+            AudioEncoderSink.Format format = AudioEncoderSink.Format.AAC_M4A;
+            float vadThresholdDb = VoiceActivityDetector.thresholdForSensitivity(sp.getInt("net.devemperor.asr.vad_sensitivity", 5));
+            PcmSegmenter segmenter = new PcmSegmenter(splitDir, format, profile.getBitRate(format, false, -1), vadThresholdDb, 300000, 600000, 700,
+                    (index, part, durationMs, hasSpeech) -> {
+                        if (!hasSpeech || Thread.currentThread().isInterrupted()) return;
+                        parts.add(executor.submit(() -> requestTranscriptionFromApi(part, language, stylePrompt, sources)));  // uploads overlap decoding
+                    });
+            new AudioFileDecoder(file, profile.getSampleRate(format)).decodeTo(segmenter);
+            if (segmenter.getFailure() != null) throw segmenter.getFailure();  // the parts would miss audio
+            return collectChunkTranscriptions(parts, language);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // waits for all chunk transcriptions in recording order and stitches them together
+    private String collectChunkTranscriptions(List<Future<String>> chunks, String language) {
+        List<String> texts = new ArrayList<>();
+        for (Future<String> chunk : chunks) {
+            String text;
+            try {
+                text = chunk.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(new InterruptedIOException("Chunk transcription interrupted"));
+            }
+            texts.add(text);
+        }
+        return joinTranscriptions(texts, language);
+    }
+
+    private String joinTranscriptions(List<String> texts, String language) {
+        boolean joinWithoutSpaces = language != null && (language.startsWith("zh") || language.startsWith("ja")
+                || language.startsWith("yue") || language.equals("th"));
+        StringBuilder result = new StringBuilder();
+        for (String text : texts) {
+            if (text == null || text.isEmpty()) continue;
+            if (result.length() > 0 && !joinWithoutSpaces) result.append(' ');
+            result.append(text);
+        }
+        return result.toString();
+    }
+
+    private File getJournalDir() {
+        return new File(getFilesDir(), "journal");
+    }
+
+    // moves the journal aside so a new recording can start its own, returns the recording at its new place
+    private RecordingJournal.RecoveredRecording takeRecoveredRecording() {
+        recoveredRecording = null;
+        File recoveredDir = new File(getCacheDir(), "recovered");
+        RecordingJournal.discard(recoveredDir);
+        if (!recoveredDir.exists() && !recoveredDir.mkdirs()) return null;
+        File[] files = getJournalDir().listFiles();
+        if (files == null) return null;
+        for (File file : files) file.renameTo(new File(recoveredDir, file.getName()));
+        return RecordingJournal.findRecoverable(recoveredDir);
+    }
+
+    private File encodeRecoveredRecording(RecordingJournal.RecoveredRecording recovered) throws IOException {
+        File file = new File(getCacheDir(), "audio_recovered.m4a");
+        AudioEncoderSink.Format format = AudioEncoderSink.Format.AAC_M4A;
+        recovered.replayTo(new AudioEncoderSink(file, format, CaptureProfile.SPEECH.getBitRate(format, false, -1)));
+        return file;
+    }
+
+    // the user chose to continue: the old audio is transcribed while they keep talking and put in front of the new dictation
+    private void continueRecoveredRecording() {
+        if (isRecording || isPreparingRecording || recoveredRecording == null) return;
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            openSettingsActivity();
+            return;
+        }
+        resumeRecoveredRecording();
+        startRecording();
+    }
+
+    private void resumeRecoveredRecording() {
+        RecordingJournal.RecoveredRecording recovered = takeRecoveredRecording();
+        if (recovered == null) return;
+        String language = currentInputLanguageValue;
+        String stylePrompt = getStylePrompt();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        recoveredTranscription = executor.submit(() -> {
+            try {
+                return requestTranscriptionFromApi(encodeRecoveredRecording(recovered), language, stylePrompt, null);  // joined after caching
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        });
+        executor.shutdown();
+    }
+
+    private void transcribeRecoveredRecording() {
+        RecordingJournal.RecoveredRecording recovered = takeRecoveredRecording();
+        if (recovered == null) return;
+        recordButton.setText(R.string.dictate_sending);
+        recordButton.setEnabled(false);
+        speechApiThread = Executors.newSingleThreadExecutor();
+        speechApiThread.execute(() -> {
+            try {
+                File file = encodeRecoveredRecording(recovered);
+                mainHandler.post(() -> {
+                    audioFile = file;
+                    sp.edit().putString("net.devemperor.asr.last_file_name", file.getName()).apply();
+                    startWhisperApiRequest();
+                });
+            } catch (IOException e) {
+                sendLogToCrashlytics(e);
+                mainHandler.post(() -> {
+                    recordButton.setText(getDictateButtonText());
+                    recordButton.setEnabled(true);
+                    showInfo("format_not_supported");
+                });
+            }
+        });
+    }
+
+    private void cancelRecoveredTranscription() {
+        if (recoveredTranscription != null) {
+            recoveredTranscription.cancel(true);
+            recoveredTranscription = null;
+        }
+    }
+
+    private void cancelChunkTranscriptions() {
+        synchronized (chunkTranscriptions) {
+            for (Future<String> chunk : chunkTranscriptions) chunk.cancel(true);
+            chunkTranscriptions.clear();
+        }
+        if (chunkApiThread != null) {
+            chunkApiThread.shutdownNow();
+            chunkApiThread = null;
+        }
+        pendingChunkTranscriptions = null;
+        chunkSegmenter = null;
+    }
+
+    private void startGPTApiRequest(PromptModel model) {
+        showRunningPrompt(model.getId() == -1 ? getString(R.string.dictate_live_prompt) : model.getName());
+
+        String systemPrompt = getRewordingSystemPrompt();
+
+        InputConnection selectedTextConnection = model.requiresSelection() ? getCurrentInputConnection() : null;
+        CharSequence selectedText = selectedTextConnection != null ? selectedTextConnection.getSelectedText(0) : null;
+
+        Runnable rewordingTask = () -> {
             try {
                 String userPrompt = model.getPrompt();
                 String rewordedText;
                 if (userPrompt.startsWith("[") && userPrompt.endsWith("]")) {
                     rewordedText = userPrompt.substring(1, userPrompt.length() - 1);
                 } else {
-                    CharSequence selectedText = null;
-                    if (overrideSelection != null) {
-                        selectedText = overrideSelection;
-                    } else if (model.requiresSelection()) {
-                        InputConnection selectedTextConnection = getCurrentInputConnection();
-                        if (selectedTextConnection != null) {
-                            selectedText = selectedTextConnection.getSelectedText(0);
-                        }
-                    }
                     if (selectedText != null && selectedText.length() > 0) {
                         userPrompt += "\n\n" + selectedText;
                     }
 
-                    rewordedText = requestRewordingFromApi(userPrompt, systemPrompt);
+                    rewordedText = requestRewordingFromApi(userPrompt, systemPrompt, getStreamedTextConsumer());
                 }
+                if (Thread.currentThread().isInterrupted()) throw new RuntimeException(new InterruptedIOException("Rewording cancelled"));
 
-                if (callback != null) {
-                    callback.onSuccess(rewordedText);
-                } else {
-                    commitTextToInputConnection(rewordedText);
-                }
+                commitTextToInputConnection(rewordedText);
             } catch (RuntimeException e) {
-                if (!(e.getCause() instanceof InterruptedIOException)) {
-                    sendLogToCrashlytics(e);
-                    if (vibrationEnabled) vibrator.vibrate(VibrationEffect.createOneShot(300, VibrationEffect.DEFAULT_AMPLITUDE));
-                    mainHandler.post(() -> {
-                        resendButton.setVisibility(View.VISIBLE);
-                        String message = Objects.requireNonNull(e.getMessage()).toLowerCase();
-                        if (message.contains("api key")) {
-                            showInfo("invalid_api_key");
-                        } else if (message.contains("quota")) {
-                            showInfo("quota_exceeded");
-                        } else {
-                            showInfo("internet_error");
-                        }
-                    });
-                } else if (e.getCause().getMessage() != null && e.getCause().getMessage().contains("timeout")) {
-                    sendLogToCrashlytics(e);
-                    if (vibrationEnabled) vibrator.vibrate(VibrationEffect.createOneShot(300, VibrationEffect.DEFAULT_AMPLITUDE));
-                    mainHandler.post(() -> {
-                        resendButton.setVisibility(View.VISIBLE);
-                        showInfo("timeout");
-                    });
+                boolean superseded = isRewordingSuperseded();
+                if (isNetworkFailure(e) && queueRewordingJob(model, selectedText)) {
+                    mainHandler.post(() -> showInfo("queued_offline"));
+                } else {
+                    showRewordingError(e);
                 }
 
-                if (callback != null) {
-                    callback.onFailure();
-                }
-                if (!restorePromptsOnFinish) {
-                    restorePromptUi();
+                if (superseded) return;  // the newer prompt owns the editor and the progress bar now
+                if (showingStreamedText) {  // streamed text replaced the selection, put the original back
+                    if (selectedText != null && selectedText.length() > 0) {
+                        commitTextToInputConnection(selectedText.toString());
+                    } else {
+                        clearComposingText();
+                    }
                 }
             }
+            restorePromptUi();
+        };
 
-            if (restorePromptsOnFinish || callback == null) {
-                restorePromptUi();
-            }
+        submitRewording(model.getId() + "\n" + model.getPrompt() + "\n" + selectedText, rewordingTask);
+    }
+
+    private void showRunningPrompt(String name) {
+        mainHandler.post(() -> {
+            promptsRv.setVisibility(View.GONE);
+            runningPromptTv.setVisibility(View.VISIBLE);
+            runningPromptTv.setText(name);
+            runningPromptPb.setVisibility(View.VISIBLE);
+            infoCl.setVisibility(View.GONE);
         });
     }
 
-    private String requestRewordingFromApi(String userPrompt, String systemPrompt) {
-        if (sp == null) throw new IllegalStateException("Preferences unavailable");
+    // makes task the rewording that tapping the running prompt cancels, the previous one is cancelled
+    // requestKey: a repeated tap while the same request is still running is ignored, null never matches
+    private void submitRewording(String requestKey, Runnable task) {
+        synchronized (rewordingLock) {
+            if (activeRewording != null && !activeRewording.isDone()) {
+                if (requestKey != null && requestKey.equals(activeRewordingKey)) {
+                    Log.d("DictateInputMethodService", "Same prompt is already running, ignoring repeated tap");
+                    return;
+                }
+                cancelRewording();  // superseded by the new prompt
+            }
+            CancellationScope scope = new CancellationScope();
+            if (rewordingApiThread == null || rewordingApiThread.isShutdown()) rewordingApiThread = Executors.newCachedThreadPool();
+            activeRewording = rewordingApiThread.submit(scope.wrap(task));
+            activeRewordingScope = scope;
+            activeRewordingKey = requestKey;
+        }
+    }
 
-        int rewordingProvider = sp.getInt("net.devemperor.asr.rewording_provider", 0);
+    // true if a newer rewording took over the editor and the progress bar from the one running on this thread
+    private boolean isRewordingSuperseded() {
+        CancellationScope scope = CancellationScope.current();
+        synchronized (rewordingLock) {
+            return activeRewordingScope != null && activeRewordingScope != scope;
+        }
+    }
+
+    private void showRewordingError(RuntimeException e) {
+        if (!(e.getCause() instanceof InterruptedIOException)) {
+            sendLogToCrashlytics(e);
+            if (vibrationEnabled) vibrator.vibrate(VibrationEffect.createOneShot(300, VibrationEffect.DEFAULT_AMPLITUDE));
+            mainHandler.post(() -> {
+                resendButton.setVisibility(View.VISIBLE);
+                String message = Objects.requireNonNull(e.getMessage()).toLowerCase();
+                if (message.contains("api key")) {
+                    showInfo("invalid_api_key");
+                } else if (message.contains("quota")) {
+                    showInfo("quota_exceeded");
+                } else {
+                    showInfo("internet_error");
+                }
+            });
+        } else if (e.getCause().getMessage() != null && e.getCause().getMessage().contains("timeout")) {
+            sendLogToCrashlytics(e);
+            if (vibrationEnabled) vibrator.vibrate(VibrationEffect.createOneShot(300, VibrationEffect.DEFAULT_AMPLITUDE));
+            mainHandler.post(() -> {
+                resendButton.setVisibility(View.VISIBLE);
+                showInfo("timeout");
+            });
+        }
+    }
+
+    private String getRewordingSystemPrompt() {
+        switch (sp.getInt("net.devemperor.asr.system_prompt_selection", 1)) {
+            case 1:
+                return DictateUtils.PROMPT_REWORDING_BE_PRECISE;
+            case 2:
+                return sp.getString("net.devemperor.asr.system_prompt_custom_text", "");
+            default:
+                return "";
+        }
+    }
+
+    private Consumer<String> getStreamedTextConsumer() {
+        return sp.getBoolean("net.devemperor.asr.streaming_rewording", false) ? this::showStreamedText : null;
+    }
+
+    private void cancelRewording() {
+        synchronized (rewordingLock) {
+            if (activeRewordingScope != null) activeRewordingScope.cancel();  // before the interrupt, so the aborted calls count as cancelled
+            if (activeRewording != null) activeRewording.cancel(true);
+            activeRewording = null;
+            activeRewordingScope = null;
+            activeRewordingKey = null;
+        }
+    }
+
+    private OpenAIClient getRewordingClient(int rewordingProvider) {
         String[] providerValues = getResources().getStringArray(R.array.dictate_api_providers_values);
         if (rewordingProvider < 0 || rewordingProvider >= providerValues.length) {
             throw new IllegalStateException("Invalid rewording provider");
@@ -1714,10 +2582,36 @@ public class DictateInputMethodService extends InputMethodService {
 
         String apiKey = sp.getString("net.devemperor.asr.rewording_api_key",
                 sp.getString("net.devemperor.asr.api_key", "NO_API_KEY"));
+        if (rewordingProvider != sp.getInt("net.devemperor.asr.rewording_provider", 0)) {  // fallback providers use their own stored key
+            String[] keySuffixes = {"openai", "groq", "custom"};
+            apiKey = sp.getString("net.devemperor.asr.rewording_api_key_" + keySuffixes[rewordingProvider], "NO_API_KEY");
+        }
         if (TextUtils.isEmpty(apiKey)) throw new IllegalStateException("API key missing");
         apiKey = apiKey.replaceAll("[^ -~]", "");
         if ("NO_API_KEY".equals(apiKey) || apiKey.isEmpty()) throw new IllegalStateException("API key missing");
+        return ApiClientPool.get(sp, apiHost, apiKey, Duration.ofSeconds(120));
+    }
+
+    private String requestRewordingFromApi(String userPrompt, String systemPrompt) {
+        return requestRewordingFromApi(userPrompt, systemPrompt, null);
+    }
+
+    // onPartialText receives the whole text received so far, so a retry or fallback provider simply overwrites it
+    private String requestRewordingFromApi(String userPrompt, String systemPrompt, Consumer<String> onPartialText) {
+        if (sp == null) throw new IllegalStateException("Preferences unavailable");
+
+        int rewordingProvider = sp.getInt("net.devemperor.asr.rewording_provider", 0);
+        String rewordingModel = getRewordingModel(rewordingProvider);
+        List<FailoverChain.Entry> chain = new ArrayList<>();
+        chain.add(new FailoverChain.Entry(rewordingProvider, rewordingModel));
+        chain.addAll(FailoverChain.parse(sp.getString("net.devemperor.asr.rewording_failover_chain", "")));
+        String requestKey = rewordingProvider + "\n" + rewordingModel + "\n" + systemPrompt + "\n" + userPrompt;
+        return inFlightRewordings.execute(requestKey, () -> FailoverChain.execute("rewording", chain, (entry, hasFallback) ->
+                requestRewordingFromProvider(entry.provider, entry.model, userPrompt, systemPrompt,
+                        hasFallback ? RetryPolicy.FAILOVER : RetryPolicy.DEFAULT, onPartialText)));
+    }
 
+    private String getRewordingModel(int rewordingProvider) {
         String rewordingModel;
         switch (rewordingProvider) {
             case 0:
@@ -1734,46 +2628,64 @@ public class DictateInputMethodService extends InputMethodService {
             default:
                 rewordingModel = "";
         }
-        if (TextUtils.isEmpty(rewordingModel)) throw new IllegalStateException("Rewording model missing");
-
-        OpenAIOkHttpClient.Builder clientBuilder = OpenAIOkHttpClient.builder()
-                .apiKey(apiKey)
-                .baseUrl(apiHost)
-                .timeout(Duration.ofSeconds(120));
+        return rewordingModel;
+    }
 
-        if (sp.getBoolean("net.devemperor.asr.proxy_enabled", false)) {
-            String proxyHost = sp.getString("net.devemperor.asr.proxy_host", getString(R.string.dictate_settings_proxy_hint));
-            if (DictateUtils.isValidProxy(proxyHost)) {
-                DictateUtils.applyProxy(clientBuilder, sp);
-            }
-        }
+    private String requestRewordingFromProvider(int rewordingProvider, String rewordingModel, String userPrompt,
+                                                String systemPrompt, RetryPolicy retryPolicy, Consumer<String> onPartialText) {
+        if (TextUtils.isEmpty(rewordingModel)) throw new IllegalStateException("Rewording model missing");
+        OpenAIClient client = getRewordingClient(rewordingProvider);
 
         ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
                 .model(rewordingModel);
         if (!TextUtils.isEmpty(systemPrompt)) {
             paramsBuilder.addSystemMessage(systemPrompt);
         }
+        if (onPartialText != null && rewordingProvider == 0) {  // OpenAI only reports usage of streams when asked
+            paramsBuilder.streamOptions(ChatCompletionStreamOptions.builder().includeUsage(true).build());
+        }
         ChatCompletionCreateParams chatCompletionCreateParams = paramsBuilder
                 .addUserMessage(userPrompt)
                 .build();
-        ChatCompletion chatCompletion;
-        int retryCount = 0;
-        while (true) {
-            try {
-                chatCompletion = clientBuilder.build().chat().completions().create(chatCompletionCreateParams);
-                break;
-            } catch (RuntimeException e) {
-                String msg = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
-                boolean isRetryable = !msg.contains("api key") && !msg.contains("quota");
-
-                if (isRetryable && retryCount < 3) {
-                    retryCount++;
-                    try { Thread.sleep(3000); } catch (InterruptedException ignored) {}
-                } else {
-                    throw e;
-                }
+        int inputChars = userPrompt.length() + (systemPrompt == null ? 0 : systemPrompt.length());
+        LatencyTracker latencyTracker = new LatencyTracker(sp, "rewording_" + rewordingProvider);
+        long p95 = latencyTracker.percentile(95, 5);
+        double scale = 1 + inputChars / 2000.0;  // like transcription: fixed overhead plus a part growing with the text
+        LatencyTracker firstTokenTracker = new LatencyTracker(sp, "first_token_" + rewordingProvider + "_" + rewordingModel);
+        RequestOptions requestOptions = TimeoutPolicy.forRewording(inputChars, onPartialText != null,
+                p95 < 0 ? -1 : (long) (p95 * scale), firstTokenTracker.percentile(95, 3));
+        RequestTracer tracer = RequestTracer.start(onPartialText != null ? "rewording_stream" : "rewording", rewordingProvider, rewordingModel);
+        String text;
+        try {
+            if (onPartialText != null) {
+                text = retryPolicy.execute(() -> {
+                    tracer.attempt();
+                    long attemptStart = SystemClock.elapsedRealtime();
+                    String result = streamRewording(client, rewordingProvider, rewordingModel, chatCompletionCreateParams, requestOptions,
+                            onPartialText, firstTokenTracker);
+                    latencyTracker.record((long) ((SystemClock.elapsedRealtime() - attemptStart) / scale));
+                    return result;
+                });
+            } else {
+                text = retryPolicy.execute(() -> {
+                    tracer.attempt();
+                    long attemptStart = SystemClock.elapsedRealtime();
+                    String result = requestChatCompletion(client, rewordingProvider, rewordingModel, chatCompletionCreateParams, requestOptions);
+                    latencyTracker.record((long) ((SystemClock.elapsedRealtime() - attemptStart) / scale));
+                    return result;
+                });
             }
+        } catch (RuntimeException e) {
+            tracer.finish(this, RetryPolicy.describe(e));
+            throw e;
         }
+        tracer.finish(this, "OK");
+        return text;
+    }
+
+    private String requestChatCompletion(OpenAIClient client, int rewordingProvider, String rewordingModel,
+                                         ChatCompletionCreateParams chatCompletionCreateParams, RequestOptions requestOptions) {
+        ChatCompletion chatCompletion = client.chat().completions().create(chatCompletionCreateParams, requestOptions);
         if (chatCompletion.usage().isPresent() && usageDb != null) {
             usageDb.edit(rewordingModel, 0, chatCompletion.usage().get().promptTokens(),
                     chatCompletion.usage().get().completionTokens(), rewordingProvider);
@@ -1781,20 +2693,64 @@ public class DictateInputMethodService extends InputMethodService {
         return chatCompletion.choices().get(0).message().content().orElse("");
     }
 
-    private String applyAutoFormattingIfEnabled(String transcript) {
-        if (TextUtils.isEmpty(transcript) || sp == null
-                || !sp.getBoolean("net.devemperor.asr.auto_formatting_enabled", false)
-                || !sp.getBoolean("net.devemperor.asr.rewording_enabled", true)) {
+    private String streamRewording(OpenAIClient client, int rewordingProvider, String rewordingModel,
+                                   ChatCompletionCreateParams params, RequestOptions requestOptions,
+                                   Consumer<String> onPartialText, LatencyTracker firstTokenTracker) {
+        StringBuilder text = new StringBuilder();
+        CompletionUsage usage = null;
+        long streamStart = SystemClock.elapsedRealtime();
+        try (StreamResponse<ChatCompletionChunk> stream = client.chat().completions().createStreaming(params, requestOptions)) {
+            Iterator<ChatCompletionChunk> chunks = stream.stream().iterator();
+            while (chunks.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) throw new RuntimeException(new InterruptedIOException("Rewording cancelled"));
+                ChatCompletionChunk chunk = chunks.next();
+                if (chunk.usage().isPresent()) usage = chunk.usage().get();
+                if (chunk.choices().isEmpty()) continue;
+                String delta = chunk.choices().get(0).delta().content().orElse("");
+                if (delta.isEmpty()) continue;
+                if (text.length() == 0) firstTokenTracker.record(SystemClock.elapsedRealtime() - streamStart);
+                text.append(delta);
+                onPartialText.accept(text.toString());
+            }
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted() || CancellationScope.isCurrentCancelled()) {  // the aborted call surfaces as an I/O error
+                throw new RuntimeException(new InterruptedIOException("Rewording cancelled"));
+            }
+            throw e;
+        }
+
+        if (usage != null && usageDb != null) {
+            usageDb.edit(rewordingModel, 0, usage.promptTokens(), usage.completionTokens(), rewordingProvider);
+        }
+        return text.toString();
+    }
+
+    private boolean isAutoFormattingEnabled() {
+        return sp != null && sp.getBoolean("net.devemperor.asr.auto_formatting_enabled", false)
+                && sp.getBoolean("net.devemperor.asr.rewording_enabled", true);
+    }
+
+    private String getAutoFormattingInstruction(String language) {
+        return AUTO_FORMATTING_PROMPT + "\n\nLanguage hint: " + (language == null ? "unknown" : language);
+    }
+
+    // null if the transcript contains instructions that need the model
+    private String formatLocally(String transcript, String language) {
+        if (!sp.getBoolean("net.devemperor.asr.auto_formatting_local", true)) return null;
+        return SpokenCommandFormatter.format(transcript, language);
+    }
+
+    private String applyAutoFormattingIfEnabled(String transcript, String language, boolean streamToEditor) {
+        if (TextUtils.isEmpty(transcript) || !isAutoFormattingEnabled()) {
             return transcript;
         }
+        String localText = formatLocally(transcript, language);
+        if (localText != null) return localText;  // most dictations contain no commands at all
 
         try {
-            String promptBuilder = AUTO_FORMATTING_PROMPT + "\n\nLanguage hint: " +
-                    (currentInputLanguageValue == null ? "unknown" : currentInputLanguageValue) +
-                    "\n\nTranscript:\n" +
-                    transcript;
+            String promptBuilder = getAutoFormattingInstruction(language) + "\n\nTranscript:\n" + transcript;
 
-            String formattedText = requestRewordingFromApi(promptBuilder, "");
+            String formattedText = requestRewordingFromApi(promptBuilder, "", streamToEditor ? getStreamedTextConsumer() : null);
             if (!TextUtils.isEmpty(formattedText)) {
                 return formattedText.trim();
             }
@@ -1809,7 +2765,14 @@ public class DictateInputMethodService extends InputMethodService {
         if (inputConnection == null) return;
 
         String output = text == null ? "" : text;
-        if (sp.getBoolean("net.devemperor.asr.instant_output", true)) {
+        if (showingStreamedText) {  // the text is already visible, typing it again would only flicker
+            showingStreamedText = false;
+            inputConnection.setComposingText(output, 1);
+            inputConnection.finishComposingText();
+            if (sp.getBoolean("net.devemperor.asr.auto_enter", false)) {
+                performEnterAction();
+            }
+        } else if (sp.getBoolean("net.devemperor.asr.instant_output", true)) {
             inputConnection.commitText(output, 1);
             if (sp.getBoolean("net.devemperor.asr.auto_enter", false)) {
                 performEnterAction();
@@ -1839,45 +2802,194 @@ public class DictateInputMethodService extends InputMethodService {
         }
     }
 
-    private void processQueuedPrompts(String initialText, List<Integer> promptIds) {
-        if (promptIds == null || promptIds.isEmpty()) {
+    // auto-formatting and the queued prompts run as one rewording that tapping the running prompt cancels
+    // fused: the whole chain should go out as one request
+    private void processQueuedPrompts(String initialText, List<Integer> promptIds, boolean fused) {
+        boolean formatFirst = isAutoFormattingEnabled();
+        String localText = formatFirst ? formatLocally(initialText, currentInputLanguageValue) : null;
+        if (localText != null) {  // most dictations contain no commands at all
+            initialText = localText;
+            formatFirst = false;
+        }
+        List<PromptModel> prompts = getPrompts(promptIds);
+        if (!formatFirst && prompts.isEmpty()) {
             commitTextToInputConnection(initialText);
             return;
         }
-        applyQueuedPromptAtIndex(initialText, promptIds, 0);
-    }
 
-    private void applyQueuedPromptAtIndex(String currentText, List<Integer> promptIds, int index) {
-        if (index >= promptIds.size()) {
-            commitTextToInputConnection(currentText);
+        List<List<PromptModel>> branches = isParallelPromptsEnabled() ? splitIntoBranches(prompts) : null;
+        if (branches != null && branches.size() > 1) {
+            runPromptBranches(initialText, branches, formatFirst);
             return;
         }
+        if (fused) {
+            FusedPromptChain chain = FusedPromptChain.compile(formatFirst ? getAutoFormattingInstruction(currentInputLanguageValue) : null,
+                    getString(R.string.dictate_auto_formatting_step), prompts, initialText);
+            if (chain != null && chain.getStepCount() > 1 && !fusionRejectingModels.contains(getRewordingModelKey())) {
+                runFusedPromptChain(chain, initialText, prompts, formatFirst);
+                return;
+            }
+        }
+        String text = initialText;
+        boolean format = formatFirst;
+        showRunningPrompt(formatFirst ? getString(R.string.dictate_auto_formatting_step) : prompts.get(0).getName());
+        submitRewording(getChainKey(initialText, prompts, formatFirst), () -> applyQueuedPrompts(text, prompts, format));
+    }
 
-        PromptModel prompt = promptsDb.get(promptIds.get(index));
-        if (prompt == null) {
-            applyQueuedPromptAtIndex(currentText, promptIds, index + 1);
-            return;
+    // the same transcript with the same prompts is only sent once, e.g. after a resend tap while it is still running
+    private static String getChainKey(String text, List<PromptModel> prompts, boolean formatFirst) {
+        StringBuilder key = new StringBuilder(formatFirst ? "chain+format" : "chain");
+        for (PromptModel prompt : prompts) key.append(':').append(prompt.getId());
+        return key.append('\n').append(text).toString();
+    }
+
+    private List<PromptModel> getPrompts(List<Integer> promptIds) {
+        List<PromptModel> prompts = new ArrayList<>();
+        for (Integer promptId : promptIds) {
+            PromptModel prompt = promptsDb.get(promptId);
+            if (prompt != null) prompts.add(prompt);
         }
+        return prompts;
+    }
 
-        if (prompt.requiresSelection() && (currentText == null || currentText.isEmpty())) {
-            applyQueuedPromptAtIndex(currentText, promptIds, index + 1);
-            return;
+    // opt-in, because the results of independent prompts are then joined instead of replacing the text before them
+    private boolean isParallelPromptsEnabled() {
+        return sp != null && sp.getBoolean("net.devemperor.asr.parallel_prompts", false);
+    }
+
+    // a prompt that does not use its input starts a new branch, the first branch works on the transcript
+    private static List<List<PromptModel>> splitIntoBranches(List<PromptModel> prompts) {
+        List<List<PromptModel>> branches = new ArrayList<>();
+        branches.add(new ArrayList<>());
+        for (PromptModel prompt : prompts) {
+            boolean fixedText = prompt.getPrompt().startsWith("[") && prompt.getPrompt().endsWith("]");
+            if (fixedText || !prompt.requiresSelection()) branches.add(new ArrayList<>());
+            branches.get(branches.size() - 1).add(prompt);
         }
+        return branches;
+    }
 
-        String inputForPrompt = prompt.requiresSelection() ? currentText : null;
-        boolean restoreUiAfter = index == promptIds.size() - 1;
+    // branches run concurrently, their results are joined in queue order
+    private String applyPromptBranches(String text, List<List<PromptModel>> branches, boolean formatFirst) {
+        ExecutorService executor;
+        synchronized (rewordingLock) {
+            if (promptsExecutor == null || promptsExecutor.isShutdown()) promptsExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_PROMPTS);
+            executor = promptsExecutor;
+        }
+        CancellationScope scope = CancellationScope.current();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < branches.size(); i++) {
+            List<PromptModel> branch = branches.get(i);
+            boolean transcriptBranch = i == 0;
+            Callable<String> branchTask = () -> {
+                String branchText = transcriptBranch ? (formatFirst ? applyAutoFormattingIfEnabled(text, currentInputLanguageValue, false) : text) : null;
+                for (PromptModel prompt : branch) branchText = applyPromptToText(prompt, branchText);
+                return branchText;
+            };
+            results.add(executor.submit(scope != null ? scope.wrap(branchTask) : branchTask));  // cancelling the chain also aborts the branches' calls
+        }
 
-        startGPTApiRequest(prompt, inputForPrompt, new PromptResultCallback() {
-            @Override
-            public void onSuccess(String text) {
-                applyQueuedPromptAtIndex(text, promptIds, index + 1);
+        StringBuilder merged = new StringBuilder();
+        try {
+            for (Future<String> result : results) {
+                String part = result.get();
+                if (TextUtils.isEmpty(part)) continue;
+                if (merged.length() > 0) merged.append('\n');
+                merged.append(part);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(new InterruptedIOException("Prompts cancelled"));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        } finally {
+            for (Future<String> result : results) result.cancel(true);  // stop the other branches once one failed
+        }
+        return merged.toString();
+    }
+
+    private void runPromptBranches(String initialText, List<List<PromptModel>> branches, boolean formatFirst) {
+        List<String> names = new ArrayList<>();
+        List<PromptModel> prompts = new ArrayList<>();
+        for (List<PromptModel> branch : branches) {
+            for (PromptModel prompt : branch) names.add(prompt.getName());
+            prompts.addAll(branch);
+        }
+        showRunningPrompt(TextUtils.join(", ", names));
+
+        submitRewording(getChainKey(initialText, prompts, formatFirst), () -> {
+            try {
+                commitTextToInputConnection(applyPromptBranches(initialText, branches, formatFirst));
+            } catch (RuntimeException e) {
+                commitTextToInputConnection(initialText);  // keep the transcript like a failed prompt does
+                if (isRewordingSuperseded()) return;  // a newer dictation owns the progress bar now
+                showRewordingError(e);
+            }
+            restorePromptUi();
+        });
+    }
+
+    private void runFusedPromptChain(FusedPromptChain chain, String initialText, List<PromptModel> prompts, boolean formatFirst) {
+        showRunningPrompt(chain.getName());
+
+        submitRewording(getChainKey(initialText, prompts, formatFirst), () -> {
+            String result;
+            try {
+                result = FusedPromptChain.parseResult(requestRewordingFromApi(chain.getUserPrompt(), getFusedSystemPrompt()));
+            } catch (RuntimeException e) {
+                // a failed request would fail the same way one prompt at a time, so it ends like a failed prompt
+                commitTextToInputConnection(initialText);
+                if (isRewordingSuperseded()) return;
+                showRewordingError(e);
+                restorePromptUi();
+                return;
             }
 
-            @Override
-            public void onFailure() {
-                commitTextToInputConnection(currentText == null ? "" : currentText);
+            if (result != null) {
+                commitTextToInputConnection(result);
+                restorePromptUi();
+            } else {  // the model did not follow the fused form, it gets the prompts one by one from now on
+                fusionRejectingModels.add(getRewordingModelKey());
+                Log.w("DictateInputMethodService", "Fused prompt chain answer could not be parsed, applying prompts one by one");
+                applyQueuedPrompts(initialText, prompts, formatFirst);  // same thread and scope, so still cancellable
             }
-        }, restoreUiAfter);
+        });
+    }
+
+    // the precise-output prompt is replaced by the fused one, a custom system prompt still applies
+    private String getFusedSystemPrompt() {
+        String customPrompt = sp.getInt("net.devemperor.asr.system_prompt_selection", 1) == 2
+                ? sp.getString("net.devemperor.asr.system_prompt_custom_text", "") : "";
+        return FusedPromptChain.SYSTEM_PROMPT + (TextUtils.isEmpty(customPrompt) ? "" : "\n\n" + customPrompt);
+    }
+
+    private String getRewordingModelKey() {
+        int rewordingProvider = sp.getInt("net.devemperor.asr.rewording_provider", 0);
+        return rewordingProvider + ":" + getRewordingModel(rewordingProvider);
+    }
+
+    // runs on the rewording thread, each step works on the result of the previous one and only the last one streams into the editor
+    private void applyQueuedPrompts(String initialText, List<PromptModel> prompts, boolean formatFirst) {
+        String text = initialText;
+        try {
+            if (formatFirst) text = applyAutoFormattingIfEnabled(text, currentInputLanguageValue, prompts.isEmpty());
+            for (int i = 0; i < prompts.size(); i++) {
+                PromptModel prompt = prompts.get(i);
+                if (prompt.requiresSelection() && TextUtils.isEmpty(text)) continue;
+                showRunningPrompt(prompt.getName());
+                text = applyPromptToText(prompt, text, i == prompts.size() - 1 ? getStreamedTextConsumer() : null);
+            }
+            if (Thread.currentThread().isInterrupted()) throw new RuntimeException(new InterruptedIOException("Rewording cancelled"));
+        } catch (RuntimeException e) {
+            if (isRewordingSuperseded()) {  // a newer dictation owns the progress bar now, but this one must not get lost
+                commitTextToInputConnection(text);
+                return;
+            }
+            showRewordingError(e);
+            if (showingStreamedText) clearComposingText();
+        }
+        commitTextToInputConnection(text);  // after a failure the result of the last step that worked
+        restorePromptUi();
     }
 
     private void toggleQueuedPrompt(PromptModel model) {
@@ -1892,6 +3004,7 @@ public class DictateInputMethodService extends InputMethodService {
             }
         }
         updateQueuedPromptsUi();
+        prewarmRewordingConnection();
     }
 
     private void updateQueuedPromptsUi() {
@@ -1979,6 +3092,7 @@ public class DictateInputMethodService extends InputMethodService {
     private void showInfo(String type) {
         infoCl.setVisibility(View.VISIBLE);
         infoNoButton.setVisibility(View.VISIBLE);
+        infoYesButton.setOnLongClickListener(null);
         infoTv.setTextColor(getResources().getColor(R.color.dictate_red, getTheme()));
         switch (type) {
             case "update":
@@ -2068,6 +3182,62 @@ public class DictateInputMethodService extends InputMethodService {
                 infoYesButton.setVisibility(View.GONE);
                 infoNoButton.setOnClickListener(v -> infoCl.setVisibility(View.GONE));
                 break;
+            case "no_speech":
+                infoTv.setTextColor(getResources().getColor(R.color.dictate_blue, getTheme()));
+                infoTv.setText(R.string.dictate_no_speech_msg);
+                infoYesButton.setVisibility(View.GONE);
+                infoNoButton.setOnClickListener(v -> infoCl.setVisibility(View.GONE));
+                break;
+            case "recovered_recording":
+                long recoveredMs = recoveredRecording != null ? recoveredRecording.getDurationMs() : 0;
+                infoTv.setTextColor(getResources().getColor(R.color.dictate_blue, getTheme()));
+                infoTv.setText(getString(R.string.dictate_recovered_recording_msg,
+                        String.format(Locale.getDefault(), "%02d:%02d", (int) (recoveredMs / 60000), (int) (recoveredMs / 1000) % 60)));
+                infoYesButton.setVisibility(View.VISIBLE);
+                infoYesButton.setOnClickListener(v -> {
+                    infoCl.setVisibility(View.GONE);
+                    continueRecoveredRecording();
+                });
+                infoYesButton.setOnLongClickListener(v -> {
+                    infoCl.setVisibility(View.GONE);
+                    transcribeRecoveredRecording();
+                    return true;
+                });
+                infoNoButton.setOnClickListener(v -> {
+                    recoveredRecording = null;
+                    RecordingJournal.discard(getJournalDir());
+                    infoCl.setVisibility(View.GONE);
+                });
+                break;
+            case "queued_offline":
+                infoTv.setTextColor(getResources().getColor(R.color.dictate_blue, getTheme()));
+                infoTv.setText(R.string.dictate_queued_offline_msg);
+                infoYesButton.setVisibility(View.GONE);
+                infoNoButton.setOnClickListener(v -> infoCl.setVisibility(View.GONE));
+                break;
+            case "offline_results":
+                infoTv.setTextColor(getResources().getColor(R.color.dictate_blue, getTheme()));
+                infoTv.setText(getString(R.string.dictate_offline_results_msg, jobsDb.countDone()));
+                infoYesButton.setVisibility(View.VISIBLE);
+                infoYesButton.setOnClickListener(v -> {
+                    insertJobResults();
+                    infoCl.setVisibility(View.GONE);
+                });
+                infoNoButton.setOnClickListener(v -> infoCl.setVisibility(View.GONE));  // results are offered again next time
+                break;
+            case "failed_jobs":
+                infoTv.setTextColor(getResources().getColor(R.color.dictate_red, getTheme()));
+                infoTv.setText(getString(R.string.dictate_failed_jobs_msg, jobsDb.countFailed()));
+                infoYesButton.setVisibility(View.VISIBLE);
+                infoYesButton.setOnClickListener(v -> {
+                    retryFailedJobs();
+                    infoCl.setVisibility(View.GONE);
+                });
+                infoNoButton.setOnClickListener(v -> {
+                    deleteFailedJobs();
+                    infoCl.setVisibility(View.GONE);
+                });
+                break;
         }
     }
 
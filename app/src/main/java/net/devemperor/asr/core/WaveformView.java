@@ -0,0 +1,94 @@
+package net.devemperor.asr.core;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import net.devemperor.asr.audio.LevelMeterSink;
+
+// mini waveform of the live microphone level, redrawn on every display frame while a recording is running
+public class WaveformView extends View implements Choreographer.FrameCallback {
+
+    private final Paint barPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float barGap;
+    private final float minBarHeight;
+
+    private LevelMeterSink source;
+    private float[] history = new float[0];
+    private boolean running = false;
+
+    public WaveformView(Context context) {
+        this(context, null);
+    }
+
+    public WaveformView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        barGap = density;
+        minBarHeight = density;
+        barPaint.setStyle(Paint.Style.FILL);
+    }
+
+    public void setColor(int color) {
+        barPaint.setColor(color);
+        invalidate();
+    }
+
+    public void setSource(LevelMeterSink source) {
+        this.source = source;
+        if (source != null && history.length != source.getHistorySize()) {
+            history = new float[source.getHistorySize()];  // only when the source changes, never per frame
+        }
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void stop() {
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        invalidate();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) return;
+        invalidate();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stop();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (!running || source == null) return;
+
+        int valid = source.copyHistory(history);
+        int bars = history.length;
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float height = getHeight() - getPaddingTop() - getPaddingBottom();
+        float barWidth = (width - barGap * (bars - 1)) / bars;
+        if (barWidth <= 0) return;
+
+        float centerY = getPaddingTop() + height / 2f;
+        float left = getPaddingLeft() + (bars - valid) * (barWidth + barGap);  // newest bar is always on the right
+        for (int i = 0; i < valid; i++) {
+            float barHeight = Math.max(minBarHeight, history[i] * height);
+            canvas.drawRect(left, centerY - barHeight / 2f, left + barWidth, centerY + barHeight / 2f, barPaint);
+            left += barWidth + barGap;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.devemperor.asr.jobs;
+
+import java.util.List;
+
+public class JobModel {
+    private final long id;
+    private final long created;
+    private final String audioPath;  // null for rewording jobs, which start from inputText
+    private final String inputText;
+    private final String language;
+    private final String stylePrompt;
+    private final List<Integer> promptIds;
+    private final String result;
+    private final int attempts;
+
+    public JobModel(long id, long created, String audioPath, String inputText, String language, String stylePrompt,
+                    List<Integer> promptIds, String result, int attempts) {
+        this.id = id;
+        this.created = created;
+        this.audioPath = audioPath;
+        this.inputText = inputText;
+        this.language = language;
+        this.stylePrompt = stylePrompt;
+        this.promptIds = promptIds;
+        this.result = result;
+        this.attempts = attempts;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public String getAudioPath() {
+        return audioPath;
+    }
+
+    public String getInputText() {
+        return inputText;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public String getStylePrompt() {
+        return stylePrompt;
+    }
+
+    public List<Integer> getPromptIds() {
+        return promptIds;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,124 @@
+package net.devemperor.asr.jobs;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// transcription and rewording jobs that could not be sent yet, kept until their result has been inserted
+public class JobsDatabaseHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "jobs.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_DONE = 1;
+    private static final int STATE_FAILED = 2;  // kept until the user sends it again or deletes it
+
+    public JobsDatabaseHelper(@Nullable Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE JOBS (ID INTEGER PRIMARY KEY AUTOINCREMENT, CREATED LONG, AUDIO_PATH TEXT, INPUT_TEXT TEXT, " +
+                "LANGUAGE TEXT, STYLE_PROMPT TEXT, PROMPT_IDS TEXT, STATE INTEGER DEFAULT 0, RESULT TEXT, ATTEMPTS INTEGER DEFAULT 0)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) { }
+
+    public synchronized long add(String audioPath, String inputText, String language, String stylePrompt, List<Integer> promptIds) {
+        ContentValues cv = new ContentValues();
+        cv.put("CREATED", System.currentTimeMillis());
+        cv.put("AUDIO_PATH", audioPath);
+        cv.put("INPUT_TEXT", inputText);
+        cv.put("LANGUAGE", language);
+        cv.put("STYLE_PROMPT", stylePrompt);
+        cv.put("PROMPT_IDS", TextUtils.join(",", promptIds));
+        cv.put("STATE", STATE_PENDING);
+        return getWritableDatabase().insert("JOBS", null, cv);
+    }
+
+    public synchronized List<JobModel> getPending(int maxAttempts) {
+        return query("STATE=" + STATE_PENDING + " AND ATTEMPTS<" + maxAttempts);
+    }
+
+    public synchronized List<JobModel> getDone() {
+        return query("STATE=" + STATE_DONE);
+    }
+
+    public synchronized int countDone() {
+        return count("STATE=" + STATE_DONE);
+    }
+
+    public synchronized List<JobModel> getFailed() {
+        return query("STATE=" + STATE_FAILED);
+    }
+
+    public synchronized int countFailed() {
+        return count("STATE=" + STATE_FAILED);
+    }
+
+    public synchronized void complete(long id, String result) {
+        ContentValues cv = new ContentValues();
+        cv.put("STATE", STATE_DONE);
+        cv.put("RESULT", result);
+        getWritableDatabase().update("JOBS", cv, "ID=" + id, null);
+    }
+
+    public synchronized void recordAttempt(long id) {
+        getWritableDatabase().execSQL("UPDATE JOBS SET ATTEMPTS=ATTEMPTS+1 WHERE ID=" + id);
+    }
+
+    public synchronized void fail(long id) {
+        ContentValues cv = new ContentValues();
+        cv.put("STATE", STATE_FAILED);
+        getWritableDatabase().update("JOBS", cv, "ID=" + id, null);
+    }
+
+    public synchronized void retry(long id) {
+        ContentValues cv = new ContentValues();
+        cv.put("STATE", STATE_PENDING);
+        cv.put("ATTEMPTS", 0);
+        getWritableDatabase().update("JOBS", cv, "ID=" + id, null);
+    }
+
+    public synchronized void delete(long id) {
+        getWritableDatabase().delete("JOBS", "ID=" + id, null);
+    }
+
+    private int count(String where) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM JOBS WHERE " + where, null);
+        int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        cursor.close();
+        return count;
+    }
+
+    private List<JobModel> query(String where) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT ID, CREATED, AUDIO_PATH, INPUT_TEXT, LANGUAGE, STYLE_PROMPT, PROMPT_IDS, RESULT, ATTEMPTS " +
+                "FROM JOBS WHERE " + where + " ORDER BY CREATED", null);
+
+        List<JobModel> jobs = new ArrayList<>();
+        if (cursor.moveToFirst()) {
+            do {
+                List<Integer> promptIds = new ArrayList<>();
+                String storedIds = cursor.getString(6);
+                if (!TextUtils.isEmpty(storedIds)) {
+                    for (String promptId : storedIds.split(",")) promptIds.add(Integer.parseInt(promptId));
+                }
+                jobs.add(new JobModel(cursor.getLong(0), cursor.getLong(1), cursor.getString(2), cursor.getString(3),
+                        cursor.getString(4), cursor.getString(5), promptIds, cursor.getString(7), cursor.getInt(8)));
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return jobs;
+    }
+}
@@ -0,0 +1,84 @@
+package net.devemperor.asr.network;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.openai.client.OpenAIClient;
+import com.openai.client.OpenAIClientImpl;
+import com.openai.core.ClientOptions;
+
+import net.devemperor.asr.DictateUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.OkHttpClient;
+
+// keeps OpenAI clients alive between requests so their OkHttp connection pools and TLS sessions are reused
+public class ApiClientPool {
+
+    private static final String TAG = "ApiClientPool";
+    private static final int MAX_CLIENTS = 4;  // transcription and rewording host, plus room for settings being edited
+
+    private static final Map<String, OpenAIClient> clients = new LinkedHashMap<String, OpenAIClient>(MAX_CLIENTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OpenAIClient> eldest) {
+            if (size() <= MAX_CLIENTS) return false;
+            closeQuietly(eldest.getValue());
+            return true;
+        }
+    };
+
+    private ApiClientPool() { }
+
+    public static synchronized OpenAIClient get(SharedPreferences sp, String apiHost, String apiKey, Duration timeout) {
+        boolean proxyEnabled = sp.getBoolean("net.devemperor.asr.proxy_enabled", false);
+        String proxyHost = sp.getString("net.devemperor.asr.proxy_host", "");
+        boolean useProxy = proxyEnabled && DictateUtils.isValidProxy(proxyHost);
+
+        String key = apiHost + '\n' + apiKey + '\n' + (useProxy ? proxyHost : "") + '\n' + timeout.toMillis();
+        OpenAIClient client = clients.get(key);
+        if (client != null) return client;
+
+        // our own OkHttp client instead of OpenAIOkHttpClient, which cannot take an EventListener
+        OkHttpClient.Builder httpClientBuilder = new OkHttpClient.Builder();
+        if (useProxy) DictateUtils.applyProxy(httpClientBuilder, sp);
+
+        client = new OpenAIClientImpl(ClientOptions.builder()
+                .httpClient(new TracingHttpClient(httpClientBuilder.build()))
+                .apiKey(apiKey)
+                .baseUrl(apiHost)
+                .timeout(timeout)
+                .maxRetries(0)  // retries are handled by RetryPolicy
+                .build());
+        clients.put(key, client);
+        return client;
+    }
+
+    // drops all cached clients, e.g. after API keys, hosts or the proxy changed
+    public static void invalidate() {
+        List<OpenAIClient> stale;
+        synchronized (ApiClientPool.class) {
+            stale = new ArrayList<>(clients.values());
+            clients.clear();
+        }
+        ConnectionPrewarmer.reset();
+        for (OpenAIClient client : stale) closeQuietly(client);
+    }
+
+    public static boolean affectsClients(String preferenceKey) {
+        return preferenceKey != null && (preferenceKey.contains("api_key") || preferenceKey.contains("custom_host")
+                || preferenceKey.contains("proxy"));
+    }
+
+    private static void closeQuietly(OpenAIClient client) {
+        try {
+            client.close();  // requests still running on this client finish normally
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to close API client", e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package net.devemperor.asr.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import okhttp3.Call;
+
+// collects the HTTP calls of one user action (e.g. a prompt chain), so cancelling it aborts them right away;
+// interrupting the thread alone does not unblock a socket read
+public class CancellationScope {
+
+    private static final ThreadLocal<CancellationScope> current = new ThreadLocal<>();
+
+    private final List<Call> calls = new ArrayList<>();
+    private final List<CancellationScope> children = new ArrayList<>();
+    private boolean cancelled;
+
+    public static CancellationScope current() {
+        return current.get();
+    }
+
+    // true if the calling thread works for a cancelled scope, so a failed request is a cancellation and not an error
+    public static boolean isCurrentCancelled() {
+        CancellationScope scope = current.get();
+        return scope != null && scope.isCancelled();
+    }
+
+    // the calls the task makes belong to this scope, on whatever thread it runs
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            CancellationScope previous = current.get();
+            current.set(this);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            CancellationScope previous = current.get();
+            current.set(this);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    // a scope of its own that is also cancelled with this one, e.g. for one leg of a hedged request
+    public CancellationScope newChild() {
+        CancellationScope child = new CancellationScope();
+        synchronized (calls) {
+            if (!cancelled) {
+                children.add(child);
+                return child;
+            }
+        }
+        child.cancel();
+        return child;
+    }
+
+    public void cancel() {
+        List<Call> running;
+        List<CancellationScope> nested;
+        synchronized (calls) {
+            cancelled = true;  // set first, so the aborted calls can tell a cancel from a network error
+            running = new ArrayList<>(calls);
+            calls.clear();
+            nested = new ArrayList<>(children);
+            children.clear();
+        }
+        for (Call call : running) call.cancel();
+        for (CancellationScope child : nested) child.cancel();
+    }
+
+    // the child finished, so cancelling this scope no longer has to reach it
+    public void removeChild(CancellationScope child) {
+        synchronized (calls) {
+            children.remove(child);
+        }
+    }
+
+    public boolean isCancelled() {
+        synchronized (calls) {
+            return cancelled;
+        }
+    }
+
+    void register(Call call) {
+        synchronized (calls) {
+            if (!cancelled) {
+                calls.add(call);
+                return;
+            }
+        }
+        call.cancel();
+    }
+
+    private static void restore(CancellationScope previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.devemperor.asr.network;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// skips a provider for a cool-down period after it failed repeatedly, then lets a single probe request through
+public class CircuitBreaker {
+
+    private static final String TAG = "CircuitBreaker";
+    private static final int CONSECUTIVE_FAILURES_TO_OPEN = 3;
+    private static final int WINDOW_SIZE = 10;
+    private static final int MIN_CALLS_FOR_RATE = 6;
+    private static final float FAILURE_RATE_TO_OPEN = 0.5f;
+    private static final long BASE_COOL_DOWN_MS = 30000;
+    private static final long MAX_COOL_DOWN_MS = 300000;
+
+    private static final Map<String, CircuitBreaker> breakers = new HashMap<>();
+    static LongSupplier clock = SystemClock::elapsedRealtime;  // replaced by tests
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final boolean[] window = new boolean[WINDOW_SIZE];  // true = failure
+    private int windowCount = 0;
+    private int windowIndex = 0;
+    private int consecutiveFailures = 0;
+    private State state = State.CLOSED;
+    private long openedAt = 0;
+    private long coolDownMs = BASE_COOL_DOWN_MS;
+    private boolean probeInFlight = false;
+
+    private CircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    public static CircuitBreaker get(String name) {
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(name);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(name);
+                breakers.put(name, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= coolDownMs) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.CLOSED) return true;
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) Log.i(TAG, name + " recovered, closing circuit");
+        state = State.CLOSED;
+        coolDownMs = BASE_COOL_DOWN_MS;
+        probeInFlight = false;
+        consecutiveFailures = 0;
+        addToWindow(false);
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        addToWindow(true);
+        if (state == State.HALF_OPEN) {
+            coolDownMs = Math.min(MAX_COOL_DOWN_MS, coolDownMs * 2);  // still broken, wait longer before the next probe
+            open();
+        } else if (state == State.CLOSED && (consecutiveFailures >= CONSECUTIVE_FAILURES_TO_OPEN || failureRate() >= FAILURE_RATE_TO_OPEN)) {
+            open();
+        }
+    }
+
+    // the request was cancelled before the provider answered, so a half-open circuit may send its probe again
+    public synchronized void recordCancelled() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        probeInFlight = false;
+        Log.w(TAG, name + " is failing, skipping it for " + coolDownMs / 1000 + " s");
+    }
+
+    private void addToWindow(boolean failure) {
+        window[windowIndex] = failure;
+        windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+        if (windowCount < WINDOW_SIZE) windowCount++;
+    }
+
+    private float failureRate() {
+        if (windowCount < MIN_CALLS_FOR_RATE) return 0f;
+        int failures = 0;
+        for (int i = 0; i < windowCount; i++) if (window[i]) failures++;
+        return (float) failures / windowCount;
+    }
+}
@@ -0,0 +1,62 @@
+package net.devemperor.asr.network;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.openai.client.OpenAIClient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+// opens a connection to an API host in the background (DNS, TCP, TLS) so the real request starts on a hot socket
+public class ConnectionPrewarmer {
+
+    private static final String TAG = "ConnectionPrewarmer";
+    private static final long MIN_INTERVAL_MS = 60000;  // OkHttp keeps idle connections for five minutes
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Map<OpenAIClient, Long> lastWarmed = new HashMap<>();
+
+    private ConnectionPrewarmer() { }
+
+    public static void prewarm(OpenAIClient client) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (lastWarmed) {
+            Long last = lastWarmed.get(client);
+            if (last != null && now - last < MIN_INTERVAL_MS) return;
+            lastWarmed.put(client, now);
+        }
+
+        executor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                client.models().list();  // cheap GET on the same client, so the connection lands in its pool
+            } catch (RuntimeException e) {
+                // any HTTP answer (even 401 or 404) means the connection is open, only the handshake matters here
+                Log.d(TAG, "Pre-warm request ended with " + e.getClass().getSimpleName());
+            }
+            Log.d(TAG, "Connection pre-warmed in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        });
+    }
+
+    // also creates the client on the pre-warm thread, building it (OkHttp, Jackson) is too slow for the tap that starts a recording
+    public static void prewarm(Supplier<OpenAIClient> clientSupplier) {
+        executor.execute(() -> {
+            try {
+                prewarm(clientSupplier.get());
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Could not create client to pre-warm", e);
+            }
+        });
+    }
+
+    // forgets clients that were dropped from the ApiClientPool
+    public static void reset() {
+        synchronized (lastWarmed) {
+            lastWarmed.clear();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.devemperor.asr.network;
+
+import android.util.Log;
+
+import com.openai.errors.OpenAIServiceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// tries an ordered list of provider+model entries, skipping providers whose circuit breaker is open
+public class FailoverChain {
+
+    private static final String TAG = "FailoverChain";
+    private static final String[] PROVIDER_NAMES = {"openai", "groq", "custom"};
+
+    public static class Entry {
+        public final int provider;
+        public final String model;
+
+        public Entry(int provider, String model) {
+            this.provider = provider;
+            this.model = model;
+        }
+
+        @Override
+        public String toString() {
+            return PROVIDER_NAMES[provider] + ":" + model;
+        }
+    }
+
+    public interface Attempt<T> {
+        // hasFallback is true when another entry would be tried after this one fails
+        T call(Entry entry, boolean hasFallback);
+    }
+
+    private FailoverChain() { }
+
+    // parses "groq:whisper-large-v3-turbo, openai:gpt-4o-mini-transcribe", ignoring entries it does not understand
+    public static List<Entry> parse(String chain) {
+        List<Entry> entries = new ArrayList<>();
+        if (chain == null) return entries;
+        for (String item : chain.split("[,;\\n]")) {
+            String trimmed = item.trim();
+            int separator = trimmed.indexOf(':');
+            if (separator <= 0 || separator == trimmed.length() - 1) continue;
+            String providerName = trimmed.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            for (int i = 0; i < PROVIDER_NAMES.length; i++) {
+                if (PROVIDER_NAMES[i].equals(providerName)) {
+                    entries.add(new Entry(i, trimmed.substring(separator + 1).trim()));
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+
+    public static <T> T execute(String purpose, List<Entry> entries, Attempt<T> attempt) {
+        List<Entry> skipped = new ArrayList<>();
+        RuntimeException lastError = null;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            CircuitBreaker breaker = CircuitBreaker.get(purpose + ":" + PROVIDER_NAMES[entry.provider]);
+            if (!breaker.allowRequest()) {
+                skipped.add(entry);
+                continue;
+            }
+            try {
+                return call(breaker, true, entry, i < entries.size() - 1, attempt);
+            } catch (RuntimeException e) {
+                lastError = e;
+                if (!shouldFailOver(e)) throw e;
+                Log.w(TAG, purpose + " via " + entry + " failed (" + RetryPolicy.describe(e) + "), trying next provider");
+            }
+        }
+
+        // every provider is cooling down: trying one anyway beats failing without a request
+        if (lastError == null && !skipped.isEmpty()) {
+            Entry entry = skipped.get(0);
+            return call(CircuitBreaker.get(purpose + ":" + PROVIDER_NAMES[entry.provider]), false, entry, false, attempt);
+        }
+        if (lastError == null) throw new IllegalStateException("No provider configured");
+        throw lastError;
+    }
+
+    // allowed: the breaker let this request through, so a half-open circuit counts it as its probe
+    private static <T> T call(CircuitBreaker breaker, boolean allowed, Entry entry, boolean hasFallback, Attempt<T> attempt) {
+        try {
+            T result = attempt.call(entry, hasFallback);
+            breaker.recordSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            if (RetryPolicy.isCancellation(e)) {
+                if (allowed) breaker.recordCancelled();  // the provider never answered, so this says nothing about it
+            } else if (RetryPolicy.isRetryable(e)) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordSuccess();  // the provider answered, the request itself was the problem
+            }
+            throw e;
+        }
+    }
+
+    // content errors (bad audio, too long, unsupported format) would fail on every provider
+    private static boolean shouldFailOver(RuntimeException e) {
+        if (RetryPolicy.isCancellation(e)) return false;
+        if (e instanceof OpenAIServiceException) {
+            int status = ((OpenAIServiceException) e).statusCode();
+            return status != 400 && status != 413 && status != 415 && status != 422;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package net.devemperor.asr.network;
+
+import android.util.Log;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// sends a backup request if the primary one has not answered within the budget and returns whichever succeeds first
+public class HedgedRequest {
+
+    private static final String TAG = "HedgedRequest";
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private HedgedRequest() { }
+
+    public static <T> T execute(Callable<T> primary, Callable<T> backup, long hedgeAfterMs) {
+        // interrupting a leg does not unblock its socket read, only cancelling its scope aborts the call
+        CancellationScope parent = CancellationScope.current();
+        CancellationScope primaryScope = parent != null ? parent.newChild() : new CancellationScope();
+        CancellationScope backupScope = parent != null ? parent.newChild() : new CancellationScope();
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Future<T> primaryFuture = completion.submit(primaryScope.wrap(primary));
+        Future<T> backupFuture = null;
+        RuntimeException primaryError = null;
+        int running = 1;
+        try {
+            Future<T> done = completion.poll(hedgeAfterMs, TimeUnit.MILLISECONDS);
+            while (true) {
+                if (done == null) {
+                    if (backupFuture == null) {
+                        Log.d(TAG, "No answer after " + hedgeAfterMs + " ms, sending backup request");
+                        backupFuture = completion.submit(backupScope.wrap(backup));
+                        running++;
+                    }
+                    done = completion.take();
+                }
+                running--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    RuntimeException error = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                    if (done == primaryFuture) primaryError = error;
+                    if (backupFuture == null) {
+                        backupFuture = completion.submit(backupScope.wrap(backup));  // primary failed early, no reason to wait for the budget
+                        running++;
+                    } else if (running == 0) {
+                        throw primaryError != null ? primaryError : error;
+                    }
+                    done = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(new InterruptedIOException("Hedged request interrupted"));
+        } finally {
+            primaryScope.cancel();  // the losing leg stops streaming and frees its connection right away
+            backupScope.cancel();
+            primaryFuture.cancel(true);
+            if (backupFuture != null) backupFuture.cancel(true);
+            if (parent != null) {
+                parent.removeChild(primaryScope);
+                parent.removeChild(backupScope);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.devemperor.asr.network;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+// lets identical requests that run at the same time share a single network call
+public class InFlightRequests<T> {
+
+    private final Map<String, CompletableFuture<T>> running = new HashMap<>();
+
+    public T execute(String key, Supplier<T> call) {
+        while (true) {
+            CompletableFuture<T> future;
+            boolean owner = false;
+            synchronized (running) {
+                future = running.get(key);
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    running.put(key, future);
+                    owner = true;
+                }
+            }
+
+            if (owner) {
+                try {
+                    T result = call.get();
+                    future.complete(result);
+                    return result;
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    synchronized (running) {
+                        running.remove(key);
+                    }
+                }
+            }
+
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(new InterruptedIOException("Request cancelled"));
+            } catch (ExecutionException e) {
+                RuntimeException error = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                if (!(error.getCause() instanceof InterruptedIOException) || Thread.currentThread().isInterrupted()) throw error;
+                // the caller that sent the request was cancelled, but this one still wants the answer: send it again
+            }
+        }
+    }
+}
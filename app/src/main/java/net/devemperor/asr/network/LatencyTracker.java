@@ -0,0 +1,66 @@
+package net.devemperor.asr.network;
+
+import android.content.SharedPreferences;
+
+import java.util.Arrays;
+
+// remembers recent request latencies per provider (persisted in the preferences) to derive percentiles
+public class LatencyTracker {
+
+    private static final int HISTORY_SIZE = 40;
+    private static final String KEY_PREFIX = "net.devemperor.asr.latency_history_";
+    private static final Object LOCK = new Object();  // trackers are created per request, the history is shared
+
+    private final SharedPreferences sp;
+    private final String key;
+
+    public LatencyTracker(SharedPreferences sp, String name) {
+        this.sp = sp;
+        this.key = KEY_PREFIX + name;
+    }
+
+    public void record(long valueMs) {
+        synchronized (LOCK) {
+            long[] history = load();
+            int length = Math.min(history.length, HISTORY_SIZE - 1);
+            StringBuilder sb = new StringBuilder();
+            for (int i = history.length - length; i < history.length; i++) sb.append(history[i]).append(',');
+            sb.append(valueMs);
+            sp.edit().putString(key, sb.toString()).apply();
+        }
+    }
+
+    // returns the requested percentile (0..100) or -1 while there are fewer than minSamples measurements
+    public long percentile(int percentile, int minSamples) {
+        long[] history;
+        synchronized (LOCK) {
+            history = load();
+        }
+        if (history.length < Math.max(1, minSamples)) return -1;
+        Arrays.sort(history);
+        int index = (int) Math.ceil(percentile / 100.0 * history.length) - 1;
+        return history[Math.max(0, Math.min(history.length - 1, index))];
+    }
+
+    public int size() {
+        synchronized (LOCK) {
+            return load().length;
+        }
+    }
+
+    private long[] load() {
+        String stored = sp.getString(key, "");
+        if (stored.isEmpty()) return new long[0];
+        String[] parts = stored.split(",");
+        long[] values = new long[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            try {
+                values[count++] = Long.parseLong(part);
+            } catch (NumberFormatException ignored) {
+                count--;
+            }
+        }
+        return Arrays.copyOf(values, count);
+    }
+}
@@ -0,0 +1,242 @@
+package net.devemperor.asr.network;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+// times a single API request (connection phases, first byte, total, attempts, bytes) and keeps the last results in a small file for the diagnostics screen
+public class RequestTracer {
+
+    private static final String TAG = "RequestTracer";
+    private static final String FILE_NAME = "request_traces.json";
+    private static final int MAX_TRACES = 50;
+
+    private static final ThreadLocal<RequestTracer> current = new ThreadLocal<>();
+
+    // attached to the clients of the ApiClientPool, requests without a tracer (e.g. pre-warming) are not timed
+    static final EventListener.Factory EVENT_LISTENER_FACTORY = call -> {
+        RequestTracer tracer = call.request().tag(RequestTracer.class);
+        return tracer != null ? tracer.new PhaseListener() : EventListener.NONE;
+    };
+
+    private final String purpose;
+    private final int provider;
+    private final String model;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startElapsed = SystemClock.elapsedRealtime();
+    private volatile int attempts = 0;
+
+    // phases of the last HTTP call, -1 if it did not get there (or did not need to, like DNS on a reused connection)
+    private volatile long dnsMs;
+    private volatile long connectMs;
+    private volatile long tlsMs;
+    private volatile long uploadMs;
+    private volatile long waitMs;
+    private volatile long downloadMs;
+    private volatile long firstByteMs;
+    private volatile boolean reusedConnection;
+    private volatile long bytesSent;
+    private volatile long bytesReceived;
+
+    private RequestTracer(String purpose, int provider, String model) {
+        this.purpose = purpose;
+        this.provider = provider;
+        this.model = model;
+        resetPhases();
+    }
+
+    // the HTTP calls made on this thread until finish() are attributed to the returned tracer
+    public static RequestTracer start(String purpose, int provider, String model) {
+        RequestTracer tracer = new RequestTracer(purpose, provider, model);
+        current.set(tracer);
+        return tracer;
+    }
+
+    static RequestTracer current() {
+        return current.get();
+    }
+
+    public void attempt() {
+        attempts++;
+    }
+
+    // time from the first to the last byte of the request body of the last call, -1 if unknown
+    public long getUploadMs() {
+        return uploadMs;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    private void resetPhases() {
+        dnsMs = connectMs = tlsMs = uploadMs = waitMs = downloadMs = firstByteMs = -1;
+        reusedConnection = true;
+        bytesSent = bytesReceived = 0;
+    }
+
+    public void finish(Context context, String outcome) {
+        if (current.get() == this) current.remove();
+        try {
+            JSONObject trace = new JSONObject()
+                    .put("time", startedAt)
+                    .put("purpose", purpose)
+                    .put("provider", provider)
+                    .put("model", model)
+                    .put("reused", reusedConnection)
+                    .put("attempts", Math.max(1, attempts))
+                    .put("first_byte_ms", firstByteMs)
+                    .put("total_ms", SystemClock.elapsedRealtime() - startElapsed)
+                    .put("dns_ms", dnsMs)
+                    .put("connect_ms", connectMs)
+                    .put("tls_ms", tlsMs)
+                    .put("upload_ms", uploadMs)
+                    .put("wait_ms", waitMs)
+                    .put("download_ms", downloadMs)
+                    .put("sent", bytesSent)
+                    .put("received", bytesReceived)
+                    .put("outcome", outcome);
+            append(context, trace);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not record request trace", e);
+        }
+    }
+
+    public static synchronized List<JSONObject> load(Context context) {
+        List<JSONObject> traces = new ArrayList<>();
+        JSONArray stored = read(context);
+        for (int i = 0; i < stored.length(); i++) {
+            JSONObject trace = stored.optJSONObject(i);
+            if (trace != null) traces.add(trace);
+        }
+        return traces;
+    }
+
+    public static synchronized void clear(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (file.exists() && !file.delete()) Log.w(TAG, "Could not delete request traces");
+    }
+
+    private static synchronized void append(Context context, JSONObject trace) {
+        JSONArray stored = read(context);
+        JSONArray traces = new JSONArray();
+        for (int i = Math.max(0, stored.length() - MAX_TRACES + 1); i < stored.length(); i++) traces.put(stored.opt(i));
+        traces.put(trace);
+        try {
+            Files.write(new File(context.getFilesDir(), FILE_NAME).toPath(), traces.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not store request traces", e);
+        }
+    }
+
+    private static JSONArray read(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) return new JSONArray();
+        try {
+            return new JSONArray(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Could not read request traces", e);
+            return new JSONArray();
+        }
+    }
+
+    // OkHttp calls these on the thread running the call, except for the asynchronous calls the app does not make
+    private class PhaseListener extends EventListener {
+
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart = -1;
+        private long requestStart;
+        private long requestEnd;
+        private long responseStart;
+
+        @Override
+        public void callStart(Call call) {
+            resetPhases();  // a retry is timed on its own
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsMs = SystemClock.elapsedRealtime() - dnsStart;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = SystemClock.elapsedRealtime();
+            reusedConnection = false;
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = SystemClock.elapsedRealtime();
+            connectMs = secureConnectStart - connectStart;
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tlsMs = SystemClock.elapsedRealtime() - secureConnectStart;
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            if (secureConnectStart < 0) connectMs = SystemClock.elapsedRealtime() - connectStart;
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = requestEnd = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            requestEnd = SystemClock.elapsedRealtime();
+            uploadMs = requestEnd - requestStart;
+            bytesSent += request.headers().byteCount();
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            requestEnd = SystemClock.elapsedRealtime();
+            uploadMs = requestEnd - requestStart;
+            bytesSent += byteCount;
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            responseStart = SystemClock.elapsedRealtime();
+            waitMs = responseStart - requestEnd;  // the server's processing time plus one round trip
+            firstByteMs = responseStart - startElapsed;
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            downloadMs = SystemClock.elapsedRealtime() - responseStart;  // for streams this includes the generation
+            bytesReceived = byteCount;
+        }
+    }
+}
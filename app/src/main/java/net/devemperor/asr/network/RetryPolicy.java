@@ -0,0 +1,175 @@
+package net.devemperor.asr.network;
+
+import android.util.Log;
+
+import com.openai.core.http.Headers;
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.OpenAIServiceException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// decides from the HTTP status whether a failed API call is worth repeating and how long to wait before the next attempt
+public class RetryPolicy {
+
+    private static final String TAG = "RetryPolicy";
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, 8000, 30000);
+    public static final RetryPolicy FAILOVER = new RetryPolicy(1, 500, 2000, 5000);  // another provider is waiting, so give up sooner
+
+    public interface Call<T> {
+        T execute();
+    }
+
+    private final int maxRetries;
+    private final long baseDelayMs;
+    private final long maxBackoffMs;
+    private final long maxServerDelayMs;  // longer Retry-After values are not worth keeping the user waiting for
+
+    public RetryPolicy(int maxRetries, long baseDelayMs, long maxBackoffMs, long maxServerDelayMs) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMs = baseDelayMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.maxServerDelayMs = maxServerDelayMs;
+    }
+
+    public <T> T execute(Call<T> call) {
+        int attempt = 0;
+        while (true) {
+            try {
+                return call.execute();
+            } catch (RuntimeException e) {
+                long delayMs = attempt < maxRetries ? retryDelayMs(e, attempt) : -1;
+                if (delayMs < 0) throw e;
+                attempt++;
+                Log.d(TAG, "Attempt " + attempt + " failed (" + describe(e) + "), retrying in " + delayMs + " ms");
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(new InterruptedIOException("Retry interrupted"));
+                }
+            }
+        }
+    }
+
+    // -1 means the error cannot be fixed by trying again
+    long retryDelayMs(RuntimeException e, int attempt) {
+        if (!isRetryable(e)) return -1;
+
+        if (e instanceof OpenAIServiceException) {
+            OpenAIServiceException serviceException = (OpenAIServiceException) e;
+            long serverDelayMs = serverRequestedDelayMs(serviceException.headers());
+            if (serverDelayMs > maxServerDelayMs) return -1;
+            if (serverDelayMs < 0 && serviceException.statusCode() == 429) {
+                serverDelayMs = rateLimitResetMs(serviceException.headers());
+                if (serverDelayMs > maxServerDelayMs) serverDelayMs = -1;  // only a hint about the window, fall back to backoff
+            }
+            if (serverDelayMs >= 0) return serverDelayMs + ThreadLocalRandom.current().nextLong(baseDelayMs / 2 + 1);  // spread clients that got the same hint
+        }
+
+        long ceiling = Math.min(maxBackoffMs, baseDelayMs << Math.min(attempt, 16));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);  // exponential backoff with equal jitter
+    }
+
+    public static boolean isRetryable(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) return false;
+        if (e instanceof OpenAIServiceException) {
+            int status = ((OpenAIServiceException) e).statusCode();
+            if (status == 429) {
+                String message = e.getMessage() != null ? e.getMessage().toLowerCase(Locale.ROOT) : "";
+                return !message.contains("quota");  // an empty balance does not refill within seconds
+            }
+            return status == 408 || status == 409 || status >= 500;
+        }
+        if (e instanceof OpenAIIoException) {
+            if (isTimeout(e)) return true;
+            return !(e.getCause() instanceof InterruptedIOException);  // cancelled by us, not the network
+        }
+        return false;
+    }
+
+    // we gave up on the request ourselves (interrupt, cancelled scope, lost hedge race), so it says nothing about the provider
+    public static boolean isCancellation(Throwable e) {
+        if (Thread.currentThread().isInterrupted() || CancellationScope.isCurrentCancelled()) return true;
+        return e.getCause() instanceof InterruptedIOException && !isTimeout(e);
+    }
+
+    // timeouts are InterruptedIOExceptions too, but unlike a cancel they are worth another try
+    public static boolean isTimeout(Throwable e) {
+        Throwable cause = e.getCause();
+        return cause instanceof SocketTimeoutException || (cause != null && "timeout".equals(cause.getMessage()));  // OkHttp's call timeout
+    }
+
+    public static String describe(Throwable e) {
+        if (e instanceof OpenAIServiceException) return "HTTP " + ((OpenAIServiceException) e).statusCode();
+        return e.getClass().getSimpleName();
+    }
+
+    // reads retry-after-ms and Retry-After (seconds or HTTP date)
+    static long serverRequestedDelayMs(Headers headers) {
+        if (headers == null) return -1;
+        try {
+            String retryAfterMs = first(headers, "retry-after-ms");
+            if (retryAfterMs != null) return (long) Double.parseDouble(retryAfterMs);
+
+            String retryAfter = first(headers, "retry-after");
+            if (retryAfter != null) {
+                try {
+                    return (long) (Double.parseDouble(retryAfter) * 1000);
+                } catch (NumberFormatException ignored) {
+                    ZonedDateTime date = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+                    return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            Log.w(TAG, "Unparsable Retry-After header", e);
+        }
+        return -1;
+    }
+
+    // OpenAI/Groq rate limit reset headers, only meaningful for a 429; prefers the limit that is actually used up
+    static long rateLimitResetMs(Headers headers) {
+        if (headers == null) return -1;
+        long requestsResetMs = parseDuration(first(headers, "x-ratelimit-reset-requests"));
+        long tokensResetMs = parseDuration(first(headers, "x-ratelimit-reset-tokens"));
+        if ("0".equals(first(headers, "x-ratelimit-remaining-requests")) && requestsResetMs > 0) return requestsResetMs;
+        if ("0".equals(first(headers, "x-ratelimit-remaining-tokens")) && tokensResetMs > 0) return tokensResetMs;
+        if (requestsResetMs > 0 && tokensResetMs > 0) return Math.min(requestsResetMs, tokensResetMs);
+        long resetMs = Math.max(requestsResetMs, tokensResetMs);
+        return resetMs > 0 ? resetMs : -1;
+    }
+
+    private static String first(Headers headers, String name) {
+        List<String> values = headers.values(name);
+        return values.isEmpty() ? null : values.get(0).trim();
+    }
+
+    // durations like "1s", "6m0s" or "250ms"
+    private static long parseDuration(String value) {
+        if (value == null) return -1;
+        Matcher matcher = DURATION_PART.matcher(value);
+        double totalMs = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "ms": totalMs += amount; break;
+                case "s": totalMs += amount * 1000; break;
+                case "m": totalMs += amount * 60000; break;
+                case "h": totalMs += amount * 3600000; break;
+            }
+        }
+        return matched ? (long) totalMs : -1;
+    }
+}
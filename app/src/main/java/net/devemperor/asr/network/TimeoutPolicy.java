@@ -0,0 +1,53 @@
+package net.devemperor.asr.network;
+
+import com.openai.core.RequestOptions;
+import com.openai.core.Timeout;
+
+import java.time.Duration;
+
+// sizes the timeouts to the request, so a stalled short clip fails within seconds while a long file gets the time it needs
+public class TimeoutPolicy {
+
+    private static final long CONNECT_MS = 10000;
+    private static final long WRITE_STALL_MS = 20000;  // OkHttp's write timeout applies to each write, so it only catches a stalled upload
+    private static final long MIN_PROCESSING_MS = 8000;
+    private static final long MIN_STREAM_READ_MS = 60000;
+    private static final long MAX_REQUEST_MS = 15 * 60 * 1000;
+    private static final long DEFAULT_UPLINK_KBPS = 256;
+
+    private TimeoutPolicy() { }
+
+    // expectedLatencyMs: p95 of earlier requests to this provider, scaled to this audio length (-1 if unknown)
+    public static RequestOptions forTranscription(long fileBytes, long audioSeconds, long uploadKbps, long expectedLatencyMs) {
+        long uplinkKbps = uploadKbps > 0 ? Math.max(32, uploadKbps / 2) : DEFAULT_UPLINK_KBPS;  // assume half the measured speed
+        long uploadMs = fileBytes * 8 / uplinkKbps;
+        long processingMs = Math.max(MIN_PROCESSING_MS, 5000 + Math.max(0, audioSeconds) * 300);  // the server needs roughly 0.3 s per second of audio at worst
+        if (expectedLatencyMs > 0) processingMs = Math.max(processingMs, expectedLatencyMs * 2);
+        return build(processingMs, CONNECT_MS + uploadMs + processingMs);
+    }
+
+    // the answer is about as long as the input, so its length drives the generation time
+    // expectedFirstTokenMs: p95 of the time until the first streamed token of this model (-1 if unknown)
+    public static RequestOptions forRewording(int inputChars, boolean streaming, long expectedLatencyMs, long expectedFirstTokenMs) {
+        long generationMs = Math.max(MIN_PROCESSING_MS * 2, 10000 + inputChars * 20L);
+        if (expectedLatencyMs > 0) generationMs = Math.max(generationMs, expectedLatencyMs * 2);
+        long readMs = generationMs;
+        if (streaming) {
+            // the first read waits for the first token, which reasoning models only send after thinking
+            readMs = Math.max(MIN_STREAM_READ_MS, expectedFirstTokenMs > 0 ? expectedFirstTokenMs * 2 : 0);
+            generationMs = Math.max(generationMs, readMs);
+        }
+        return build(readMs, CONNECT_MS + generationMs);
+    }
+
+    private static RequestOptions build(long readMs, long requestMs) {
+        return RequestOptions.builder()
+                .timeout(Timeout.builder()
+                        .connect(Duration.ofMillis(CONNECT_MS))
+                        .write(Duration.ofMillis(WRITE_STALL_MS))
+                        .read(Duration.ofMillis(readMs))
+                        .request(Duration.ofMillis(Math.min(MAX_REQUEST_MS, requestMs)))
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,195 @@
+package net.devemperor.asr.network;
+
+import com.openai.core.RequestOptions;
+import com.openai.core.Timeout;
+import com.openai.core.http.Headers;
+import com.openai.core.http.HttpClient;
+import com.openai.core.http.HttpRequest;
+import com.openai.core.http.HttpRequestBody;
+import com.openai.core.http.HttpResponse;
+import com.openai.core.http.QueryParams;
+import com.openai.errors.OpenAIIoException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+// runs the SDK's requests on our own OkHttp client, so the RequestTracer can time each phase with an EventListener
+// and a CancellationScope can abort the Call; the SDK's OkHttp client only exposes timeout, proxy and TLS settings
+// and keeps its okhttp3 client and calls private, so neither can be attached to it
+class TracingHttpClient implements HttpClient {
+
+    private final OkHttpClient okHttpClient;
+
+    TracingHttpClient(OkHttpClient okHttpClient) {
+        this.okHttpClient = okHttpClient.newBuilder()
+                .eventListenerFactory(RequestTracer.EVENT_LISTENER_FACTORY)
+                .build();
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request, RequestOptions requestOptions) {
+        Call call = newCall(request, requestOptions);
+        try {
+            return new OkHttpResponse(call.execute());
+        } catch (IOException e) {
+            if (call.isCanceled()) throw cancelled();
+            throw new OpenAIIoException("Request failed", e);
+        } finally {
+            closeBody(request);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest request, RequestOptions requestOptions) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        Call call = newCall(request, requestOptions);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                future.complete(new OkHttpResponse(response));
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(call.isCanceled() ? cancelled() : new OpenAIIoException("Request failed", e));
+            }
+        });
+        future.whenComplete((response, throwable) -> {
+            if (future.isCancelled()) call.cancel();  // the SDK gave up on the request
+            closeBody(request);
+        });
+        return future;
+    }
+
+    @Override
+    public void close() {
+        okHttpClient.dispatcher().executorService().shutdown();
+        okHttpClient.connectionPool().evictAll();
+    }
+
+    private Call newCall(HttpRequest request, RequestOptions requestOptions) {
+        OkHttpClient client = okHttpClient;
+        Timeout timeout = requestOptions.getTimeout();
+        if (timeout != null) {  // derived clients share the connection pool and dispatcher
+            client = okHttpClient.newBuilder()
+                    .connectTimeout(timeout.connect())
+                    .readTimeout(timeout.read())
+                    .writeTimeout(timeout.write())
+                    .callTimeout(timeout.request())
+                    .build();
+        }
+        Call call = client.newCall(toOkHttpRequest(request));
+        CancellationScope scope = CancellationScope.current();
+        if (scope != null) scope.register(call);
+        return call;
+    }
+
+    private static Request toOkHttpRequest(HttpRequest request) {
+        HttpUrl.Builder url = HttpUrl.get(request.baseUrl()).newBuilder();
+        for (String segment : request.pathSegments()) url.addPathSegment(segment);
+        QueryParams queryParams = request.queryParams();
+        for (String key : queryParams.keys()) {
+            for (String value : queryParams.values(key)) url.addQueryParameter(key, value);
+        }
+
+        Request.Builder builder = new Request.Builder()
+                .url(url.build())
+                .tag(RequestTracer.class, RequestTracer.current());  // the request is sent on the thread that traces it
+        Headers headers = request.headers();
+        for (String name : headers.names()) {
+            for (String value : headers.values(name)) builder.addHeader(name, value);
+        }
+
+        String method = request.method().name();
+        RequestBody body = request.body() != null ? toRequestBody(request.body()) : null;
+        if (body == null && (method.equals("POST") || method.equals("PUT") || method.equals("PATCH"))) {
+            body = RequestBody.create(new byte[0], null);
+        }
+        return builder.method(method, body).build();
+    }
+
+    private static RequestBody toRequestBody(HttpRequestBody body) {
+        String contentType = body.contentType();
+        MediaType mediaType = contentType == null ? null : MediaType.parse(contentType);
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return body.contentLength();
+            }
+
+            @Override
+            public boolean isOneShot() {
+                return !body.repeatable();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) {
+                body.writeTo(sink.outputStream());
+            }
+        };
+    }
+
+    // an InterruptedIOException, so RetryPolicy neither retries it nor counts it as a network error
+    private static OpenAIIoException cancelled() {
+        return new OpenAIIoException("Request cancelled", new InterruptedIOException("Request cancelled"));
+    }
+
+    private static void closeBody(HttpRequest request) {
+        if (request.body() != null) request.body().close();
+    }
+
+    private static class OkHttpResponse implements HttpResponse {
+
+        private final Response response;
+        private final Headers headers;
+
+        OkHttpResponse(Response response) {
+            this.response = response;
+            Headers.Builder builder = Headers.builder();
+            for (String name : response.headers().names()) {
+                for (String value : response.headers(name)) builder.put(name, value);
+            }
+            this.headers = builder.build();
+        }
+
+        @Override
+        public int statusCode() {
+            return response.code();
+        }
+
+        @Override
+        public Headers headers() {
+            return headers;
+        }
+
+        @Override
+        public InputStream body() {
+            ResponseBody body = response.body();
+            return body != null ? body.byteStream() : new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.devemperor.asr.network;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// stores transcripts under a hash of the audio content and the request parameters, so resending the same audio costs nothing
+public class TranscriptCache {
+
+    private static final String TAG = "TranscriptCache";
+    private static final String DIRECTORY_NAME = "transcripts";
+    private static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final long MAX_TOTAL_BYTES = 2L * 1024 * 1024;
+    private static final int MAX_ENTRIES = 200;
+
+    private final File directory;
+
+    public TranscriptCache(Context context) {
+        this.directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+    }
+
+    public static String key(File audio, String model, String language, String stylePrompt) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(audio)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        digest.update(("\n" + model + "\n" + language + "\n" + stylePrompt).getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    public synchronized String get(String key) {
+        File entry = new File(directory, key);
+        if (!entry.isFile()) return null;
+        if (System.currentTimeMillis() - entry.lastModified() > MAX_AGE_MS) {
+            entry.delete();
+            return null;
+        }
+        try {
+            String transcript = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8);
+            entry.setLastModified(System.currentTimeMillis());  // recently used entries survive trimming
+            return transcript;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read cached transcript", e);
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, String transcript) {
+        if (transcript == null) return;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) throw new IOException("Could not create " + directory);
+            Files.write(new File(directory, key).toPath(), transcript.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache transcript", e);
+            return;
+        }
+        trim();
+    }
+
+    public synchronized void clear() {
+        File[] entries = directory.listFiles();
+        if (entries != null) for (File entry : entries) entry.delete();
+    }
+
+    // drops expired entries, then the least recently used ones until count and size fit
+    private void trim() {
+        File[] entries = directory.listFiles();
+        if (entries == null) return;
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified).reversed());
+        long now = System.currentTimeMillis();
+        long totalBytes = 0;
+        for (int i = 0; i < entries.length; i++) {
+            totalBytes += entries[i].length();
+            if (i >= MAX_ENTRIES || totalBytes > MAX_TOTAL_BYTES || now - entries[i].lastModified() > MAX_AGE_MS) {
+                entries[i].delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.devemperor.asr.rewording;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// compiles an ordered prompt chain into one request, so n queued prompts cost one round trip instead of n
+public class FusedPromptChain {
+
+    private static final String RESULT_START = "<result>";
+    private static final String RESULT_END = "</result>";
+
+    // the usual rewording system prompt forbids any text around the output, which would also forbid the result tags
+    public static final String SYSTEM_PROMPT = "You transform a text by carrying out a sequence of steps, each on the result of the previous one. "
+            + "Work silently: never show intermediate results, explanations or comments. Your whole reply is the final text enclosed in "
+            + RESULT_START + " and " + RESULT_END + ", with nothing before or after the tags. "
+            + "Keep the language of the text unless a step explicitly asks for a different one.";
+
+    private final List<String> names;
+    private final List<String> instructions;
+    private final String inputText;
+
+    private FusedPromptChain(List<String> names, List<String> instructions, String inputText) {
+        this.names = names;
+        this.instructions = instructions;
+        this.inputText = inputText;
+    }
+
+    // formattingInstruction may be null, returns null unless every prompt works on the result of the previous one
+    public static FusedPromptChain compile(String formattingInstruction, String formattingName, List<PromptModel> prompts, String text) {
+        if (text == null || text.trim().isEmpty()) return null;
+
+        List<String> names = new ArrayList<>();
+        List<String> instructions = new ArrayList<>();
+        if (formattingInstruction != null) {
+            names.add(formattingName);
+            instructions.add(formattingInstruction);
+        }
+        for (PromptModel prompt : prompts) {
+            String instruction = prompt.getPrompt();
+            if (instruction.startsWith("[") && instruction.endsWith("]")) return null;  // fixed text, costs nothing on its own
+            if (!prompt.requiresSelection()) return null;  // starts a branch of its own
+            names.add(prompt.getName());
+            instructions.add(instruction);
+        }
+        if (instructions.isEmpty()) return null;
+        return new FusedPromptChain(names, instructions, text);
+    }
+
+    public int getStepCount() {
+        return instructions.size();
+    }
+
+    public String getName() {
+        return String.join(" → ", names);
+    }
+
+    public String getUserPrompt() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Carry out the following steps in order. Each step works on the result of the previous step. Do not show intermediate results or explanations. Reply with the result of the last step only, enclosed in ")
+                .append(RESULT_START).append(" and ").append(RESULT_END).append(".\n");
+        for (int i = 0; i < instructions.size(); i++) {
+            builder.append("\n### Step ").append(i + 1).append('\n').append(instructions.get(i)).append('\n');
+        }
+        builder.append("\n### Text\n").append(inputText);
+        return builder.toString();
+    }
+
+    // null means the model did not follow the fused form
+    public static String parseResult(String response) {
+        if (response == null) return null;
+        int start = response.indexOf(RESULT_START);
+        int end = response.lastIndexOf(RESULT_END);
+        if (start < 0 || end < start + RESULT_START.length()) return null;
+        return response.substring(start + RESULT_START.length(), end).trim();
+    }
+}
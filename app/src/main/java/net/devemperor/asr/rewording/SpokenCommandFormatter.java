@@ -0,0 +1,319 @@
+package net.devemperor.asr.rewording;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// applies the spoken formatting commands of AUTO_FORMATTING_PROMPT on the device, the model is only asked when a command needs interpretation
+public class SpokenCommandFormatter {
+
+    private enum Type { PUNCTUATION, LINE_BREAK, OPEN_QUOTE, CLOSE_QUOTE, BULLET, NUMBER, BOLD_START, BOLD_END, ITALIC_START, ITALIC_END, AMBIGUOUS }
+
+    private static class Command {
+        final Type type;
+        final String text;
+        final int lineBreaks;
+        final boolean nounLike;  // also an ordinary word ("period", "Punkt"), only trusted at the start of the text or right after another command
+
+        Command(Type type, String text, int lineBreaks, boolean nounLike) {
+            this.type = type;
+            this.text = text;
+            this.lineBreaks = lineBreaks;
+            this.nounLike = nounLike;
+        }
+    }
+
+    private static class Node {
+        final Map<String, Node> next = new HashMap<>();
+        Command command;
+    }
+
+    private static class Match {
+        final int start;
+        final int end;
+        final Command command;
+
+        Match(int start, int end, Command command) {
+            this.start = start;
+            this.end = end;
+            this.command = command;
+        }
+    }
+
+    private static final Map<String, Node> DICTIONARIES = new HashMap<>();
+    private static final Map<String, Set<String>> DETERMINERS = new HashMap<>();
+    private static final Node ALL_LANGUAGES = new Node();
+    private static final Set<String> ALL_DETERMINERS = new HashSet<>();
+
+    static {
+        Node en = language("en", "a an the this that my your his her our their one");
+        add(en, Type.LINE_BREAK, "\n\n", "new paragraph", "next paragraph", "paragraph break");
+        add(en, Type.LINE_BREAK, "\n", "new line", "next line", "line break");
+        addNounLike(en, ".", "period", "full stop");
+        add(en, Type.PUNCTUATION, ",", "comma");
+        add(en, Type.PUNCTUATION, "?", "question mark");
+        add(en, Type.PUNCTUATION, "!", "exclamation mark", "exclamation point");
+        addNounLike(en, ":", "colon");
+        add(en, Type.PUNCTUATION, ";", "semicolon", "semi colon");
+        add(en, Type.OPEN_QUOTE, "\"", "open quote", "begin quote", "start quote");
+        add(en, Type.CLOSE_QUOTE, "\"", "close quote", "end quote", "unquote");
+        add(en, Type.BULLET, "- ", "bullet", "bullet point", "next bullet", "new bullet", "list item");
+        addNumbers(en, "number", "one two three four five six seven eight nine ten");
+        add(en, Type.BOLD_START, "**", "start bold", "begin bold", "bold on");
+        add(en, Type.BOLD_END, "**", "end bold", "stop bold", "bold off");
+        add(en, Type.ITALIC_START, "_", "start italic", "begin italic", "italic on");
+        add(en, Type.ITALIC_END, "_", "end italic", "stop italic", "italic off");
+        add(en, Type.AMBIGUOUS, null, "bold", "italic", "italics", "italicize", "replace", "becomes", "spelled", "spelling", "written as");
+
+        Node de = language("de", "der die das den dem des ein eine einen einem einer mein meine dein deine sein seine ihr ihre");
+        add(de, Type.LINE_BREAK, "\n\n", "neuer absatz", "neuen absatz", "nächster absatz");
+        add(de, Type.LINE_BREAK, "\n", "neue zeile", "nächste zeile", "zeilenumbruch");
+        addNounLike(de, ".", "punkt");
+        add(de, Type.PUNCTUATION, ",", "komma");
+        add(de, Type.PUNCTUATION, "?", "fragezeichen");
+        add(de, Type.PUNCTUATION, "!", "ausrufezeichen");
+        add(de, Type.PUNCTUATION, ":", "doppelpunkt");
+        add(de, Type.PUNCTUATION, ";", "semikolon", "strichpunkt");
+        add(de, Type.OPEN_QUOTE, "\"", "anführungszeichen auf", "anführungszeichen unten", "anführungsstriche auf");
+        add(de, Type.CLOSE_QUOTE, "\"", "anführungszeichen zu", "anführungszeichen oben", "anführungsstriche zu");
+        add(de, Type.BULLET, "- ", "aufzählungspunkt", "spiegelstrich", "listenpunkt");
+        addNumbers(de, "nummer", "eins zwei drei vier fünf sechs sieben acht neun zehn");
+        add(de, Type.BOLD_START, "**", "fett anfang", "fett ein", "fett start");
+        add(de, Type.BOLD_END, "**", "fett ende", "fett aus");
+        add(de, Type.ITALIC_START, "_", "kursiv anfang", "kursiv ein", "kursiv start");
+        add(de, Type.ITALIC_END, "_", "kursiv ende", "kursiv aus");
+        add(de, Type.AMBIGUOUS, null, "fett", "kursiv", "anführungszeichen", "ersetze", "ersetzen", "geschrieben", "buchstabiert");
+
+        Node es = language("es", "el la los las un una unos unas este esta ese esa mi tu su");
+        add(es, Type.LINE_BREAK, "\n\n", "nuevo párrafo", "nuevo parrafo");
+        add(es, Type.LINE_BREAK, "\n", "nueva línea", "nueva linea", "salto de línea", "salto de linea");
+        addNounLike(es, ".", "punto", "punto final", "punto y seguido");
+        add(es, Type.PUNCTUATION, ".", 2, "punto y aparte");
+        add(es, Type.PUNCTUATION, ",", "coma");
+        add(es, Type.PUNCTUATION, "?", "signo de interrogación", "cierre de interrogación");
+        add(es, Type.PUNCTUATION, "!", "signo de exclamación", "cierre de exclamación");
+        add(es, Type.PUNCTUATION, ":", "dos puntos");
+        add(es, Type.PUNCTUATION, ";", "punto y coma");
+        add(es, Type.OPEN_QUOTE, "\"", "abrir comillas", "abre comillas");
+        add(es, Type.CLOSE_QUOTE, "\"", "cerrar comillas", "cierra comillas");
+        add(es, Type.BULLET, "- ", "viñeta", "nueva viñeta", "siguiente viñeta");
+        addNumbers(es, "número", "uno dos tres cuatro cinco seis siete ocho nueve diez");
+        addNumbers(es, "numero", "uno dos tres cuatro cinco seis siete ocho nueve diez");
+        add(es, Type.BOLD_START, "**", "inicio negrita", "empieza negrita");
+        add(es, Type.BOLD_END, "**", "fin negrita", "termina negrita");
+        add(es, Type.ITALIC_START, "_", "inicio cursiva", "empieza cursiva");
+        add(es, Type.ITALIC_END, "_", "fin cursiva", "termina cursiva");
+        add(es, Type.AMBIGUOUS, null, "negrita", "cursiva", "reemplaza", "reemplazar", "sustituye", "se escribe");
+
+        Node pt = language("pt", "o a os as um uma uns umas este esta esse essa meu minha seu sua");
+        add(pt, Type.LINE_BREAK, "\n\n", "novo parágrafo", "novo paragrafo");
+        add(pt, Type.LINE_BREAK, "\n", "nova linha", "quebra de linha");
+        addNounLike(pt, ".", "ponto", "ponto final");
+        add(pt, Type.PUNCTUATION, ",", "vírgula", "virgula");
+        add(pt, Type.PUNCTUATION, "?", "ponto de interrogação");
+        add(pt, Type.PUNCTUATION, "!", "ponto de exclamação");
+        add(pt, Type.PUNCTUATION, ":", "dois pontos");
+        add(pt, Type.PUNCTUATION, ";", "ponto e vírgula", "ponto e virgula");
+        add(pt, Type.OPEN_QUOTE, "\"", "abre aspas", "abrir aspas");
+        add(pt, Type.CLOSE_QUOTE, "\"", "fecha aspas", "fechar aspas");
+        add(pt, Type.BULLET, "- ", "item de lista", "novo item", "próximo item");
+        addNumbers(pt, "número", "um dois três quatro cinco seis sete oito nove dez");
+        addNumbers(pt, "numero", "um dois três quatro cinco seis sete oito nove dez");
+        add(pt, Type.BOLD_START, "**", "início negrito", "inicio negrito");
+        add(pt, Type.BOLD_END, "**", "fim negrito");
+        add(pt, Type.ITALIC_START, "_", "início itálico", "inicio itálico");
+        add(pt, Type.ITALIC_END, "_", "fim itálico");
+        add(pt, Type.AMBIGUOUS, null, "negrito", "itálico", "substitua", "substituir", "soletrando", "escreve-se");
+    }
+
+    private SpokenCommandFormatter() { }
+
+    // returns the formatted text, or null if the transcript contains instructions only the model can resolve
+    public static String format(String transcript, String language) {
+        if (transcript == null || transcript.trim().isEmpty()) return transcript;
+        Node root;
+        Set<String> determiners;
+        if (language == null || "detect".equals(language)) {
+            root = ALL_LANGUAGES;
+            determiners = ALL_DETERMINERS;
+        } else {
+            String code = language.split("[-_]")[0].toLowerCase(Locale.ROOT);
+            root = DICTIONARIES.get(code);
+            determiners = DETERMINERS.get(code);
+            if (root == null) return null;  // no local dictionary for this language
+        }
+
+        String[] words = transcript.trim().split("\\s+");
+        String[] normalized = new String[words.length];
+        for (int i = 0; i < words.length; i++) normalized[i] = normalize(words[i]);
+
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < words.length; ) {
+            Match match = longestMatch(root, normalized, i);
+            if (match == null) {
+                i++;
+            } else {
+                matches.add(match);
+                i = match.end;
+            }
+        }
+        if (matches.isEmpty()) return transcript;  // nothing to format, the usual case
+
+        int numbers = 0;
+        int openBold = 0;
+        int openItalic = 0;
+        for (int m = 0; m < matches.size(); m++) {
+            Match match = matches.get(m);
+            Command command = match.command;
+            if (command.type == Type.AMBIGUOUS) return null;
+            if (match.start > 0 && determiners.contains(normalized[match.start - 1])) return null;  // "the colon", "the new line", "ein Punkt"
+            if (command.nounLike && match.start > 0
+                    && (m == 0 || matches.get(m - 1).end != match.start)) return null;  // "trial period", "um Punkt"
+            if (command.type == Type.NUMBER) numbers++;
+            if (command.type == Type.BOLD_START) openBold++;
+            if (command.type == Type.BOLD_END && --openBold < 0) return null;
+            if (command.type == Type.ITALIC_START) openItalic++;
+            if (command.type == Type.ITALIC_END && --openItalic < 0) return null;
+        }
+        if (numbers == 1 || openBold != 0 || openItalic != 0) return null;  // a single "number one" is rarely a list
+
+        StringBuilder out = new StringBuilder();
+        boolean capitalize = false;
+        boolean glue = true;  // no space before the next word
+        int next = 0;
+        for (int i = 0; i < words.length; ) {
+            Match match = next < matches.size() && matches.get(next).start == i ? matches.get(next++) : null;
+            if (match == null) {
+                if (!glue) out.append(' ');
+                out.append(capitalize ? capitalizeFirst(words[i]) : words[i]);
+                capitalize = false;
+                glue = false;
+                i++;
+                continue;
+            }
+
+            Command command = match.command;
+            switch (command.type) {
+                case PUNCTUATION:
+                    trimEnd(out, " ,.;:!?");  // the transcription model often adds its own punctuation around the cue
+                    out.append(command.text);
+                    capitalize = ".?!".contains(command.text);
+                    glue = false;
+                    if (command.lineBreaks > 0) {
+                        lineBreak(out, command.lineBreaks);
+                        glue = true;
+                    }
+                    break;
+                case LINE_BREAK:
+                    trimEnd(out, " ,;");
+                    lineBreak(out, command.text.length());
+                    capitalize = true;
+                    glue = true;
+                    break;
+                case BULLET:
+                case NUMBER:
+                    trimEnd(out, " ,;");
+                    if (out.length() > 0 && out.charAt(out.length() - 1) != '\n') out.append('\n');
+                    out.append(command.text);
+                    capitalize = command.type == Type.NUMBER;
+                    glue = true;
+                    break;
+                case OPEN_QUOTE:
+                case BOLD_START:
+                case ITALIC_START:
+                    if (!glue) out.append(' ');
+                    out.append(command.text);
+                    glue = true;
+                    break;
+                default:  // closing quote or style
+                    trimEnd(out, " ");
+                    out.append(command.text);
+                    glue = false;
+                    break;
+            }
+            i = match.end;
+        }
+        return out.toString().trim();
+    }
+
+    private static Match longestMatch(Node root, String[] normalized, int start) {
+        Node node = root;
+        Match match = null;
+        for (int i = start; i < normalized.length; i++) {
+            node = node.next.get(normalized[i]);
+            if (node == null) break;
+            if (node.command != null) match = new Match(start, i + 1, node.command);
+        }
+        return match;
+    }
+
+    private static String normalize(String word) {
+        return word.toLowerCase(Locale.ROOT).replaceAll("^[\\p{Punct}¿¡«»“”„‚‘’]+|[\\p{Punct}¿¡«»“”„‚‘’]+$", "");
+    }
+
+    private static String capitalizeFirst(String word) {
+        if (word.isEmpty() || !Character.isLowerCase(word.codePointAt(0))) return word;
+        int first = Character.charCount(word.codePointAt(0));
+        return word.substring(0, first).toUpperCase(Locale.ROOT) + word.substring(first);
+    }
+
+    private static void trimEnd(StringBuilder out, String characters) {
+        while (out.length() > 0 && characters.indexOf(out.charAt(out.length() - 1)) >= 0) out.setLength(out.length() - 1);
+    }
+
+    private static void lineBreak(StringBuilder out, int count) {
+        trimEnd(out, " \n");
+        if (out.length() == 0) return;
+        for (int i = 0; i < count; i++) out.append('\n');
+    }
+
+    private static Node language(String code, String determiners) {
+        Node root = new Node();
+        DICTIONARIES.put(code, root);
+        Set<String> set = new HashSet<>(Arrays.asList(determiners.split(" ")));
+        DETERMINERS.put(code, set);
+        ALL_DETERMINERS.addAll(set);
+        return root;
+    }
+
+    private static void add(Node root, Type type, String text, String... phrases) {
+        add(root, type, text, 0, phrases);
+    }
+
+    private static void add(Node root, Type type, String text, int lineBreaks, String... phrases) {
+        for (String phrase : phrases) insert(root, phrase, new Command(type, text, lineBreaks, false));
+    }
+
+    private static void addNounLike(Node root, String text, String... phrases) {
+        for (String phrase : phrases) insert(root, phrase, new Command(Type.PUNCTUATION, text, 0, true));
+    }
+
+    private static void addNumbers(Node root, String prefix, String numberWords) {
+        String[] words = numberWords.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            Command command = new Command(Type.NUMBER, (i + 1) + ". ", 0, false);
+            insert(root, prefix + " " + words[i], command);
+            insert(root, prefix + " " + (i + 1), command);
+        }
+    }
+
+    private static void insert(Node root, String phrase, Command command) {
+        for (Node target : new Node[]{root, ALL_LANGUAGES}) {
+            Node node = target;
+            for (String word : phrase.split(" ")) {
+                Node child = node.next.get(word);
+                if (child == null) {
+                    child = new Node();
+                    node.next.put(word, child);
+                }
+                node = child;
+            }
+            if (node.command == null || target == root) node.command = command;
+        }
+    }
+}
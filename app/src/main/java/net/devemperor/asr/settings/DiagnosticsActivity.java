@@ -0,0 +1,101 @@
+package net.devemperor.asr.settings;
+
+import android.os.Bundle;
+import android.text.format.DateFormat;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.activity.EdgeToEdge;
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+
+import com.google.android.material.button.MaterialButton;
+
+import net.devemperor.asr.R;
+import net.devemperor.asr.network.RequestTracer;
+
+import org.json.JSONObject;
+
+import java.util.Date;
+import java.util.List;
+
+public class DiagnosticsActivity extends AppCompatActivity {
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EdgeToEdge.enable(this);
+        setContentView(R.layout.activity_diagnostics);
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.activity_diagnostics), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+            return insets;
+        });
+
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+            actionBar.setTitle(R.string.dictate_settings_diagnostics);
+        }
+
+        TextView tracesTv = findViewById(R.id.diagnostics_traces_tv);
+        TextView noDataTv = findViewById(R.id.diagnostics_no_data_tv);
+        MaterialButton clearBtn = findViewById(R.id.diagnostics_clear_btn);
+
+        List<JSONObject> traces = RequestTracer.load(this);
+        String[] providers = getResources().getStringArray(R.array.dictate_api_providers);
+        StringBuilder text = new StringBuilder();
+        for (int i = traces.size() - 1; i >= 0; i--) {  // newest first
+            JSONObject trace = traces.get(i);
+            int provider = trace.optInt("provider");
+            text.append(getString(R.string.dictate_diagnostics_trace,
+                    DateFormat.format("dd.MM. HH:mm:ss", new Date(trace.optLong("time"))),
+                    trace.optString("purpose"),
+                    provider >= 0 && provider < providers.length ? providers[provider] : "?",
+                    trace.optString("model"),
+                    trace.optString("outcome"),
+                    trace.optLong("total_ms"),
+                    formatMs(trace.optLong("first_byte_ms", -1)),
+                    trace.optInt("attempts"),
+                    getString(trace.optBoolean("reused")
+                            ? R.string.dictate_diagnostics_connection_warm : R.string.dictate_diagnostics_connection_cold),
+                    trace.optLong("sent") / 1024f,
+                    trace.optLong("received") / 1024f));
+            text.append('\n').append(getString(R.string.dictate_diagnostics_phases,
+                    formatMs(trace.optLong("dns_ms", -1)),
+                    formatMs(trace.optLong("connect_ms", -1)),
+                    formatMs(trace.optLong("tls_ms", -1)),
+                    formatMs(trace.optLong("upload_ms", -1)),
+                    formatMs(trace.optLong("wait_ms", -1)),
+                    formatMs(trace.optLong("download_ms", -1))));
+            text.append("\n\n");
+        }
+        tracesTv.setText(text.toString().trim());
+        noDataTv.setVisibility(traces.isEmpty() ? View.VISIBLE : View.GONE);
+        clearBtn.setEnabled(!traces.isEmpty());
+
+        clearBtn.setOnClickListener(v -> {
+            RequestTracer.clear(this);
+            tracesTv.setText("");
+            noDataTv.setVisibility(View.VISIBLE);
+            clearBtn.setEnabled(false);
+        });
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private static String formatMs(long ms) {
+        return ms < 0 ? "–" : ms + " ms";
+    }
+}
@@ -74,26 +74,13 @@ public class DictateSettingsActivity extends AppCompatActivity {
                             Cursor cursor = getContentResolver().query(uri, null, null, null, null);
                             if (cursor == null) return;
                             int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                            int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
 
                             String fileName = "";
-                            long fileSize = 0;
                             if (cursor.moveToFirst()) {
                                 fileName = cursor.getString(nameIndex);
-                                fileSize = cursor.getLong(sizeIndex);
                             }
                             cursor.close();
 
-                            // check if fileSize is larger than 25MB
-                            if (fileSize > 25 * 1024 * 1024) {
-                                new MaterialAlertDialogBuilder(this)
-                                        .setTitle(R.string.dictate_file_too_large_title)
-                                        .setMessage(R.string.dictate_file_too_large_message)
-                                        .setPositiveButton(R.string.dictate_okay, null)
-                                        .show();
-                                return;
-                            }
-
                             // copy the inputFileUri file to app cache directory
                             Toast.makeText(this, getString(R.string.dictate_file_copying_to_cache), Toast.LENGTH_SHORT).show();
                             try {
@@ -24,6 +24,7 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import net.devemperor.asr.BuildConfig;
 import net.devemperor.asr.DictateUtils;
 import net.devemperor.asr.R;
+import net.devemperor.asr.network.TranscriptCache;
 import net.devemperor.asr.rewording.PromptModel;
 import net.devemperor.asr.rewording.PromptsDatabaseHelper;
 import net.devemperor.asr.rewording.PromptsOverviewActivity;
@@ -168,6 +169,24 @@ public class PreferencesFragment extends PreferenceFragmentCompat {
             });
         }
 
+        Preference diagnosticsPreference = findPreference("net.devemperor.asr.diagnostics");
+        if (diagnosticsPreference != null) {
+            long lastStartLatency = sp.getLong("net.devemperor.asr.diag_start_latency_ms", -1);
+            if (lastStartLatency < 0) {
+                diagnosticsPreference.setSummary(R.string.dictate_diagnostics_no_data);
+            } else {
+                diagnosticsPreference.setSummary(getString(R.string.dictate_diagnostics_start_latency, lastStartLatency,
+                        sp.getLong("net.devemperor.asr.diag_start_latency_avg_ms", lastStartLatency)));
+            }
+
+            diagnosticsPreference.setOnPreferenceClickListener(preference -> {
+                Intent intent = new Intent(requireContext(), DiagnosticsActivity.class);
+                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                startActivity(intent);
+                return true;
+            });
+        }
+
         Preference apiSettingsPreference = findPreference("net.devemperor.asr.api_settings");
         if (apiSettingsPreference != null) {
             apiSettingsPreference.setOnPreferenceClickListener(preference -> {
@@ -188,6 +207,21 @@ public class PreferencesFragment extends PreferenceFragmentCompat {
             });
         }
 
+        for (String key : new String[]{"net.devemperor.asr.transcription_failover_chain", "net.devemperor.asr.rewording_failover_chain"}) {
+            EditTextPreference failoverChainPreference = findPreference(key);
+            if (failoverChainPreference == null) continue;
+            failoverChainPreference.setSummaryProvider((Preference.SummaryProvider<EditTextPreference>) preference -> {
+                String chain = preference.getText();
+                if (TextUtils.isEmpty(chain)) return getString(R.string.dictate_settings_failover_chain_summary);
+                return chain;
+            });
+            failoverChainPreference.setOnBindEditTextListener(editText -> {
+                editText.setInputType(InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS);
+                editText.setHint(key.contains("transcription") ? "groq:whisper-large-v3-turbo, openai:gpt-4o-mini-transcribe"
+                        : "groq:llama-3.3-70b-versatile, openai:gpt-4o-mini");
+            });
+        }
+
         EditTextPreference proxyHostPreference = findPreference("net.devemperor.asr.proxy_host");
         if (proxyHostPreference != null) {
             proxyHostPreference.setSummaryProvider((Preference.SummaryProvider<EditTextPreference>) preference -> {
@@ -244,6 +278,7 @@ public class PreferencesFragment extends PreferenceFragmentCompat {
                                     file.delete();
                                 }
                             }
+                            new TranscriptCache(requireContext()).clear();
                             cachePreference.setTitle(getString(R.string.dictate_settings_cache, 0, 0f));
                             Toast.makeText(requireContext(), R.string.dictate_cache_cleared, Toast.LENGTH_SHORT).show();
                         })
@@ -0,0 +1,70 @@
+package net.devemperor.asr.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PcmRingBufferTest {
+
+    @Test
+    public void readsSamplesInWriteOrder() {
+        PcmRingBuffer buffer = new PcmRingBuffer(8);
+        assertEquals(3, buffer.write(new short[]{1, 2, 3}, 0, 3));
+        assertEquals(2, buffer.write(new short[]{9, 4, 5}, 1, 2));
+        assertEquals(5, buffer.available());
+
+        short[] target = new short[5];
+        assertEquals(5, buffer.read(target, 0, 5));
+        assertArrayEquals(new short[]{1, 2, 3, 4, 5}, target);
+        assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void wrapsAroundTheEnd() {
+        PcmRingBuffer buffer = new PcmRingBuffer(8);
+        buffer.write(new short[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        buffer.read(new short[4], 0, 4);
+        assertEquals(5, buffer.write(new short[]{7, 8, 9, 10, 11}, 0, 5));
+
+        short[] target = new short[7];
+        assertEquals(7, buffer.read(target, 0, 7));
+        assertArrayEquals(new short[]{5, 6, 7, 8, 9, 10, 11}, target);
+    }
+
+    @Test
+    public void dropsWhatDoesNotFit() {
+        PcmRingBuffer buffer = new PcmRingBuffer(4);
+        assertEquals(4, buffer.write(new short[]{1, 2, 3, 4, 5, 6}, 0, 6));
+        assertEquals(0, buffer.write(new short[]{7}, 0, 1));
+        assertEquals(3, buffer.getDroppedSamples());
+
+        short[] target = new short[4];
+        buffer.read(target, 0, 4);
+        assertArrayEquals(new short[]{1, 2, 3, 4}, target);  // the oldest samples are kept
+    }
+
+    @Test
+    public void readNeverReturnsMoreThanAvailable() {
+        PcmRingBuffer buffer = new PcmRingBuffer(8);
+        short[] target = new short[4];
+        assertEquals(0, buffer.read(target, 0, 4));
+
+        buffer.write(new short[]{1, 2}, 0, 2);
+        assertEquals(2, buffer.read(target, 1, 3));
+        assertArrayEquals(new short[]{0, 1, 2, 0}, target);
+    }
+
+    @Test
+    public void clearDiscardsUnreadSamples() {
+        PcmRingBuffer buffer = new PcmRingBuffer(8);
+        buffer.write(new short[]{1, 2, 3}, 0, 3);
+        buffer.clear();
+        assertEquals(0, buffer.available());
+
+        buffer.write(new short[]{4}, 0, 1);
+        short[] target = new short[1];
+        assertEquals(1, buffer.read(target, 0, 1));
+        assertArrayEquals(new short[]{4}, target);
+    }
+}
@@ -0,0 +1,171 @@
+package net.devemperor.asr.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PcmSegmenterTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = SAMPLE_RATE / 50;  // 20 ms
+    private static final float THRESHOLD_DB = VoiceActivityDetector.thresholdForSensitivity(5);
+
+    private File directory;
+    private final List<Segment> segments = new ArrayList<>();
+
+    private static class Segment {
+        final int index;
+        final File file;
+        final long durationMs;
+        final boolean hasSpeech;
+
+        Segment(int index, File file, long durationMs, boolean hasSpeech) {
+            this.index = index;
+            this.file = file;
+            this.durationMs = durationMs;
+            this.hasSpeech = hasSpeech;
+        }
+    }
+
+    // writes an empty file instead of encoding, failing from the given segment on
+    private class TestSegmenter extends PcmSegmenter {
+
+        private final int failFromSegment;
+        private int opened = 0;
+
+        TestSegmenter(long minSegmentMs, long maxSegmentMs, int cutPauseMs, int failFromSegment) {
+            super(directory, AudioEncoderSink.Format.AAC_M4A, 32000, THRESHOLD_DB, minSegmentMs, maxSegmentMs, cutPauseMs,
+                    (index, file, durationMs, hasSpeech) -> segments.add(new Segment(index, file, durationMs, hasSpeech)));
+            this.failFromSegment = failFromSegment;
+        }
+
+        @Override
+        AudioEncoderSink newEncoder(File file) {
+            boolean fail = opened++ >= failFromSegment;
+            return new AudioEncoderSink(file, AudioEncoderSink.Format.AAC_M4A, 32000) {
+                @Override
+                public void onStart(int sampleRate) throws IOException {
+                    if (fail) throw new IOException("Encoder could not be started");
+                    Files.write(file.toPath(), new byte[0]);
+                }
+
+                @Override
+                public void onPcm(short[] samples, int offset, int length) { }
+
+                @Override
+                public void onStop() { }
+            };
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segments").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void cutsAtAPauseOnceTheSegmentIsLongEnough() throws IOException {
+        PcmSegmenter segmenter = new TestSegmenter(1000, 10000, 300, Integer.MAX_VALUE);
+        segmenter.onStart(SAMPLE_RATE);
+        feed(segmenter, VoiceActivityDetectorTest.tone(8000), 1200);
+        feed(segmenter, new short[FRAME], 600);
+        feed(segmenter, VoiceActivityDetectorTest.tone(8000), 400);
+        segmenter.onStop();
+
+        assertEquals(2, segments.size());
+        Segment first = segments.get(0);
+        assertTrue("cut after " + first.durationMs + " ms", first.durationMs > 1200 + 300 && first.durationMs <= 1800);
+        assertTrue(first.hasSpeech);
+        assertEquals(2200, first.durationMs + segments.get(1).durationMs);
+        assertTrue(segments.get(1).hasSpeech);
+        assertEquals(2, segmenter.getSegmentCount());
+    }
+
+    @Test
+    public void doesNotCutAtAPauseBeforeTheMinimumLength() throws IOException {
+        PcmSegmenter segmenter = new TestSegmenter(5000, 10000, 300, Integer.MAX_VALUE);
+        segmenter.onStart(SAMPLE_RATE);
+        feed(segmenter, VoiceActivityDetectorTest.tone(8000), 1000);
+        feed(segmenter, new short[FRAME], 1000);
+        feed(segmenter, VoiceActivityDetectorTest.tone(8000), 1000);
+        segmenter.onStop();
+
+        assertEquals(1, segments.size());
+        assertEquals(3000, segments.get(0).durationMs);
+    }
+
+    @Test
+    public void cutsContinuousSpeechAtTheMaximumLength() throws IOException {
+        PcmSegmenter segmenter = new TestSegmenter(500, 1000, 300, Integer.MAX_VALUE);
+        segmenter.onStart(SAMPLE_RATE);
+        feed(segmenter, VoiceActivityDetectorTest.tone(8000), 2500);
+        segmenter.onStop();
+
+        assertEquals(3, segments.size());
+        assertEquals(1000, segments.get(0).durationMs);
+        assertEquals(1000, segments.get(1).durationMs);
+        assertEquals(500, segments.get(2).durationMs);
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(i, segments.get(i).index);
+            assertTrue(segments.get(i).file.exists());
+        }
+    }
+
+    @Test
+    public void silentSegmentsAreMarked() throws IOException {
+        PcmSegmenter segmenter = new TestSegmenter(500, 10000, 300, Integer.MAX_VALUE);
+        segmenter.onStart(SAMPLE_RATE);
+        feed(segmenter, new short[FRAME], 1000);
+        segmenter.onStop();
+
+        assertEquals(2, segments.size());
+        for (Segment segment : segments) assertFalse(segment.hasSpeech);
+    }
+
+    @Test
+    public void emptyLastSegmentIsDeletedAndNotReported() throws IOException {
+        PcmSegmenter segmenter = new TestSegmenter(500, 1000, 300, Integer.MAX_VALUE);
+        segmenter.onStart(SAMPLE_RATE);
+        feed(segmenter, VoiceActivityDetectorTest.tone(8000), 1000);
+        segmenter.onStop();
+
+        assertEquals(1, segments.size());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void failedSegmentStopsSegmentingAndIsReported() throws IOException {
+        PcmSegmenter segmenter = new TestSegmenter(500, 1000, 300, 1);
+        segmenter.onStart(SAMPLE_RATE);
+        assertNull(segmenter.getFailure());
+        feed(segmenter, VoiceActivityDetectorTest.tone(8000), 2500);
+        segmenter.onStop();
+
+        assertNotNull(segmenter.getFailure());
+        assertEquals(1, segments.size());  // nothing after the failure is passed off as a complete segment
+        assertEquals(1000, segments.get(0).durationMs);
+    }
+
+    private static void feed(PcmSegmenter segmenter, short[] frame, int durationMs) {
+        for (int elapsed = 0; elapsed < durationMs; elapsed += 20) segmenter.onPcm(frame, 0, FRAME);
+    }
+}
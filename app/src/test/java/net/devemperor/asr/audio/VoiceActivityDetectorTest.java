@@ -0,0 +1,79 @@
+package net.devemperor.asr.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class VoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = SAMPLE_RATE / 50;  // 20 ms
+
+    @Test
+    public void silenceIsNoSpeech() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, VoiceActivityDetector.thresholdForSensitivity(5));
+        for (int i = 0; i < 50; i++) assertFalse(vad.process(new short[FRAME], 0, FRAME));
+        assertEquals(-96f, vad.getLastLevelDb(), 0.01f);
+    }
+
+    @Test
+    public void speechStartsAfterTheOnset() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, VoiceActivityDetector.thresholdForSensitivity(5));
+        short[] tone = tone(8000);
+        assertFalse(vad.process(tone, 0, FRAME));  // a single click is not speech
+        assertFalse(vad.process(tone, 0, FRAME));
+        assertTrue(vad.process(tone, 0, FRAME));
+        assertTrue(vad.isSpeaking());
+    }
+
+    @Test
+    public void speechHoldsOverShortPauses() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, VoiceActivityDetector.thresholdForSensitivity(5));
+        short[] tone = tone(8000);
+        for (int i = 0; i < 10; i++) vad.process(tone, 0, FRAME);
+
+        int hangoverFrames = VoiceActivityDetector.HANGOVER_DURATION_MS / 20;
+        for (int i = 1; i < hangoverFrames; i++) assertTrue("frame " + i, vad.process(new short[FRAME], 0, FRAME));
+        assertFalse(vad.process(new short[FRAME], 0, FRAME));
+    }
+
+    @Test
+    public void quietToneBelowThresholdIsNoSpeech() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, VoiceActivityDetector.thresholdForSensitivity(5));
+        short[] tone = tone(20);  // about -64 dB, below the minimum speech level
+        for (int i = 0; i < 20; i++) assertFalse(vad.process(tone, 0, FRAME));
+    }
+
+    @Test
+    public void noiseFloorFollowsDropsImmediately() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, VoiceActivityDetector.thresholdForSensitivity(5));
+        vad.process(tone(5), 0, FRAME);
+        assertEquals(vad.getLastLevelDb(), vad.getNoiseFloorDb(), 0.01f);
+    }
+
+    @Test
+    public void higherSensitivityNeedsLessLevel() {
+        assertEquals(6f, VoiceActivityDetector.thresholdForSensitivity(10), 0.001f);
+        assertEquals(19.5f, VoiceActivityDetector.thresholdForSensitivity(1), 0.001f);
+        assertEquals(VoiceActivityDetector.thresholdForSensitivity(1), VoiceActivityDetector.thresholdForSensitivity(-3), 0.001f);
+        assertEquals(VoiceActivityDetector.thresholdForSensitivity(10), VoiceActivityDetector.thresholdForSensitivity(42), 0.001f);
+        assertTrue(VoiceActivityDetector.thresholdForSensitivity(7) < VoiceActivityDetector.thresholdForSensitivity(3));
+    }
+
+    @Test
+    public void emptyFrameKeepsTheState() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, VoiceActivityDetector.thresholdForSensitivity(5));
+        short[] tone = tone(8000);
+        for (int i = 0; i < 5; i++) vad.process(tone, 0, FRAME);
+        assertTrue(vad.process(tone, 0, 0));
+    }
+
+    // a 440 Hz sine, about as loud and as voiced as a vowel
+    static short[] tone(int amplitude) {
+        short[] samples = new short[FRAME];
+        for (int i = 0; i < FRAME; i++) samples[i] = (short) (amplitude * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        return samples;
+    }
+}
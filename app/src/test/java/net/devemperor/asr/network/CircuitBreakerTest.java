@@ -0,0 +1,155 @@
+package net.devemperor.asr.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+public class CircuitBreakerTest {
+
+    private final long[] now = {1000};
+    private LongSupplier realClock;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        realClock = CircuitBreaker.clock;
+        CircuitBreaker.clock = () -> now[0];
+        breaker = CircuitBreaker.get(UUID.randomUUID().toString());  // breakers are shared by name
+    }
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.clock = realClock;
+    }
+
+    @Test
+    public void sameNameSharesTheBreaker() {
+        assertSame(CircuitBreaker.get("provider/model"), CircuitBreaker.get("provider/model"));
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsTheConsecutiveCount() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensOnTheFailureRate() {
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());  // too few calls to judge the rate
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneProbeThrough() {
+        open();
+        now[0] += 29999;
+        assertFalse(breaker.allowRequest());
+
+        now[0] += 1;
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeDoublesTheCoolDown() {
+        open();
+        now[0] += 30000;
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now[0] += 59999;
+        assertFalse(breaker.allowRequest());
+        now[0] += 1;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void coolDownIsCapped() {
+        open();
+        for (int i = 0; i < 10; i++) {
+            now[0] += 300000;
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        now[0] += 300000;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void recoveryResetsTheCoolDown() {
+        open();
+        now[0] += 30000;
+        breaker.allowRequest();
+        breaker.recordFailure();
+        now[0] += 60000;
+        breaker.allowRequest();
+        breaker.recordSuccess();
+
+        open();
+        now[0] += 30000;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledProbeReleasesTheSlot() {
+        open();
+        now[0] += 30000;
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordCancelled();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelDoesNotCountAsFailureOrSuccess() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordCancelled();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
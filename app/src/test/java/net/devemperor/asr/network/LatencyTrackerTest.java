@@ -0,0 +1,182 @@
+package net.devemperor.asr.network;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class LatencyTrackerTest {
+
+    private final SharedPreferences sp = new InMemoryPreferences();
+
+    @Test
+    public void noPercentileBeforeEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker(sp, "openai");
+        assertEquals(-1, tracker.percentile(95, 1));
+        tracker.record(100);
+        tracker.record(200);
+        assertEquals(-1, tracker.percentile(95, 3));
+        tracker.record(300);
+        assertEquals(300, tracker.percentile(95, 3));
+        assertEquals(200, tracker.percentile(50, 3));
+    }
+
+    @Test
+    public void keepsOnlyTheRecentHistory() {
+        LatencyTracker tracker = new LatencyTracker(sp, "openai");
+        for (int i = 1; i <= 100; i++) tracker.record(i);
+
+        assertEquals(40, tracker.size());
+        assertEquals(98, tracker.percentile(95, 10));  // samples 61..100
+        assertEquals(80, tracker.percentile(50, 10));
+        assertEquals(61, tracker.percentile(0, 10));
+        assertEquals(100, tracker.percentile(100, 10));
+    }
+
+    @Test
+    public void percentileDoesNotDependOnOrder() {
+        LatencyTracker tracker = new LatencyTracker(sp, "openai");
+        for (long value : new long[]{900, 100, 500, 300, 700}) tracker.record(value);
+        assertEquals(500, tracker.percentile(50, 1));
+        assertEquals(900, tracker.percentile(95, 1));
+    }
+
+    @Test
+    public void historyIsSharedByName() {
+        new LatencyTracker(sp, "openai").record(100);
+        new LatencyTracker(sp, "openai").record(200);
+        new LatencyTracker(sp, "groq").record(50);
+
+        assertEquals(2, new LatencyTracker(sp, "openai").size());
+        assertEquals(1, new LatencyTracker(sp, "groq").size());
+    }
+
+    @Test
+    public void brokenEntriesAreSkipped() {
+        LatencyTracker tracker = new LatencyTracker(sp, "openai");
+        sp.edit().putString("net.devemperor.asr.latency_history_openai", "100,abc,,300").apply();
+
+        assertEquals(2, tracker.size());
+        assertEquals(300, tracker.percentile(95, 1));
+        tracker.record(200);
+        assertEquals(3, tracker.size());
+    }
+
+    static class InMemoryPreferences implements SharedPreferences {
+
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new Editor() {
+                @Override
+                public Editor putString(String key, String value) {
+                    values.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putStringSet(String key, Set<String> value) {
+                    values.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putInt(String key, int value) {
+                    values.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putLong(String key, long value) {
+                    values.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putFloat(String key, float value) {
+                    values.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putBoolean(String key, boolean value) {
+                    values.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor remove(String key) {
+                    values.remove(key);
+                    return this;
+                }
+
+                @Override
+                public Editor clear() {
+                    values.clear();
+                    return this;
+                }
+
+                @Override
+                public boolean commit() {
+                    return true;
+                }
+
+                @Override
+                public void apply() { }
+            };
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) { }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) { }
+    }
+}
@@ -0,0 +1,239 @@
+package net.devemperor.asr.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.openai.core.JsonValue;
+import com.openai.core.http.Headers;
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.UnexpectedStatusCodeException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+public class RetryPolicyTest {
+
+    private static final RetryPolicy POLICY = new RetryPolicy(3, 500, 8000, 30000);
+
+    @After
+    public void tearDown() {
+        Thread.interrupted();  // do not leak an interrupt into the next test
+    }
+
+    @Test
+    public void serverErrorsAndRateLimitsAreRetryable() {
+        for (int status : new int[]{408, 409, 429, 500, 502, 503, 504}) {
+            assertTrue("HTTP " + status, RetryPolicy.isRetryable(status(status)));
+        }
+    }
+
+    @Test
+    public void requestErrorsAreNotRetryable() {
+        for (int status : new int[]{400, 401, 403, 404, 413, 415, 422}) {
+            assertFalse("HTTP " + status, RetryPolicy.isRetryable(status(status)));
+        }
+    }
+
+    @Test
+    public void exhaustedQuotaIsNotRetryable() {
+        assertFalse(RetryPolicy.isRetryable(status(429, Headers.builder().build(), "You exceeded your current quota")));
+    }
+
+    @Test
+    public void networkErrorsAreRetryableButCancelsAreNot() {
+        assertTrue(RetryPolicy.isRetryable(io(new ConnectException("Failed to connect"))));
+        assertTrue(RetryPolicy.isRetryable(io(new SocketTimeoutException("Read timed out"))));
+        assertTrue(RetryPolicy.isRetryable(io(new InterruptedIOException("timeout"))));  // OkHttp's call timeout
+        assertFalse(RetryPolicy.isRetryable(io(new InterruptedIOException("Request cancelled"))));
+        assertFalse(RetryPolicy.isRetryable(new IllegalStateException("bug")));
+    }
+
+    @Test
+    public void timeoutsAreToldApartFromCancels() {
+        assertTrue(RetryPolicy.isTimeout(io(new SocketTimeoutException("Read timed out"))));
+        assertTrue(RetryPolicy.isTimeout(io(new InterruptedIOException("timeout"))));
+        assertFalse(RetryPolicy.isTimeout(io(new InterruptedIOException("Request cancelled"))));
+
+        assertTrue(RetryPolicy.isCancellation(io(new InterruptedIOException("Request cancelled"))));
+        assertFalse(RetryPolicy.isCancellation(io(new SocketTimeoutException("Read timed out"))));
+        assertFalse(RetryPolicy.isCancellation(io(new ConnectException("Failed to connect"))));
+        assertFalse(RetryPolicy.isCancellation(status(503)));
+    }
+
+    @Test
+    public void anInterruptedThreadIsACancel() {
+        Thread.currentThread().interrupt();
+        assertTrue(RetryPolicy.isCancellation(status(503)));
+        assertFalse(RetryPolicy.isRetryable(status(503)));
+    }
+
+    @Test
+    public void aCancelledScopeIsACancel() throws Exception {
+        CancellationScope scope = new CancellationScope();
+        scope.cancel();
+        assertTrue(scope.wrap(() -> RetryPolicy.isCancellation(io(new ConnectException("Failed to connect")))).call());
+    }
+
+    @Test
+    public void retryAfterMillisecondsWins() {
+        Headers headers = Headers.builder().put("retry-after-ms", "1500").put("retry-after", "20").build();
+        assertEquals(1500, RetryPolicy.serverRequestedDelayMs(headers));
+    }
+
+    @Test
+    public void retryAfterInSeconds() {
+        assertEquals(2000, RetryPolicy.serverRequestedDelayMs(Headers.builder().put("Retry-After", "2").build()));
+        assertEquals(500, RetryPolicy.serverRequestedDelayMs(Headers.builder().put("Retry-After", "0.5").build()));
+    }
+
+    @Test
+    public void retryAfterAsHttpDate() {
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(10));
+        long delayMs = RetryPolicy.serverRequestedDelayMs(Headers.builder().put("Retry-After", date).build());
+        assertTrue("delay " + delayMs, delayMs > 8000 && delayMs <= 10000);
+
+        String past = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().minusSeconds(10));
+        assertEquals(0, RetryPolicy.serverRequestedDelayMs(Headers.builder().put("Retry-After", past).build()));
+    }
+
+    @Test
+    public void missingOrBrokenRetryAfterIsIgnored() {
+        assertEquals(-1, RetryPolicy.serverRequestedDelayMs(null));
+        assertEquals(-1, RetryPolicy.serverRequestedDelayMs(Headers.builder().build()));
+        assertEquals(-1, RetryPolicy.serverRequestedDelayMs(Headers.builder().put("Retry-After", "soon").build()));
+    }
+
+    @Test
+    public void rateLimitResetPrefersTheExhaustedLimit() {
+        Headers requests = Headers.builder()
+                .put("x-ratelimit-remaining-requests", "0")
+                .put("x-ratelimit-reset-requests", "1s")
+                .put("x-ratelimit-reset-tokens", "6m0s")
+                .build();
+        assertEquals(1000, RetryPolicy.rateLimitResetMs(requests));
+
+        Headers tokens = Headers.builder()
+                .put("x-ratelimit-remaining-tokens", "0")
+                .put("x-ratelimit-reset-requests", "1s")
+                .put("x-ratelimit-reset-tokens", "6m0s")
+                .build();
+        assertEquals(360000, RetryPolicy.rateLimitResetMs(tokens));
+    }
+
+    @Test
+    public void rateLimitResetParsesDurations() {
+        assertEquals(250, RetryPolicy.rateLimitResetMs(Headers.builder().put("x-ratelimit-reset-tokens", "250ms").build()));
+        assertEquals(1500, RetryPolicy.rateLimitResetMs(Headers.builder().put("x-ratelimit-reset-requests", "1.5s").build()));
+        assertEquals(3723000, RetryPolicy.rateLimitResetMs(Headers.builder().put("x-ratelimit-reset-requests", "1h2m3s").build()));
+        assertEquals(2000, RetryPolicy.rateLimitResetMs(Headers.builder()
+                .put("x-ratelimit-reset-requests", "2s")
+                .put("x-ratelimit-reset-tokens", "7s")
+                .build()));
+        assertEquals(-1, RetryPolicy.rateLimitResetMs(Headers.builder().build()));
+        assertEquals(-1, RetryPolicy.rateLimitResetMs(null));
+    }
+
+    @Test
+    public void backoffGrowsWithinItsBounds() {
+        for (int i = 0; i < 50; i++) {
+            assertBetween(250, 500, POLICY.retryDelayMs(status(503), 0));
+            assertBetween(500, 1000, POLICY.retryDelayMs(status(503), 1));
+            assertBetween(2000, 4000, POLICY.retryDelayMs(status(503), 3));
+            assertBetween(4000, 8000, POLICY.retryDelayMs(status(503), 10));
+            assertBetween(4000, 8000, POLICY.retryDelayMs(status(503), 100));
+        }
+    }
+
+    @Test
+    public void serverDelayIsFollowed() {
+        RuntimeException e = status(503, Headers.builder().put("Retry-After", "2").build(), "busy");
+        for (int i = 0; i < 50; i++) assertBetween(2000, 2000 + 251, POLICY.retryDelayMs(e, 0));
+    }
+
+    @Test
+    public void rateLimitResetIsOnlyUsedForRateLimits() {
+        Headers headers = Headers.builder().put("x-ratelimit-reset-requests", "3s").build();
+        for (int i = 0; i < 50; i++) {
+            assertBetween(3000, 3000 + 251, POLICY.retryDelayMs(status(429, headers, "slow down"), 0));
+            assertBetween(250, 500, POLICY.retryDelayMs(status(503, headers, "busy"), 0));
+        }
+    }
+
+    @Test
+    public void tooLongServerDelayGivesUp() {
+        RuntimeException e = status(503, Headers.builder().put("Retry-After", "120").build(), "busy");
+        assertEquals(-1, POLICY.retryDelayMs(e, 0));
+        assertEquals(-1, POLICY.retryDelayMs(status(400), 0));
+    }
+
+    @Test
+    public void executeRetriesUntilItWorks() {
+        int[] calls = {0};
+        String result = new RetryPolicy(3, 2, 4, 100).execute(() -> {
+            if (++calls[0] < 3) throw status(503);
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, calls[0]);
+    }
+
+    @Test
+    public void executeGivesUpAfterMaxRetries() {
+        int[] calls = {0};
+        RuntimeException error = status(503);
+        try {
+            new RetryPolicy(2, 2, 4, 100).execute(() -> {
+                calls[0]++;
+                throw error;
+            });
+            fail("expected the error");
+        } catch (RuntimeException e) {
+            assertSame(error, e);
+        }
+        assertEquals(3, calls[0]);
+    }
+
+    @Test
+    public void executeDoesNotRetryRequestErrors() {
+        int[] calls = {0};
+        try {
+            new RetryPolicy(3, 2, 4, 100).execute(() -> {
+                calls[0]++;
+                throw status(400);
+            });
+            fail("expected the error");
+        } catch (RuntimeException expected) {
+            assertEquals(1, calls[0]);
+        }
+    }
+
+    private static UnexpectedStatusCodeException status(int statusCode) {
+        return status(statusCode, Headers.builder().build(), "error");
+    }
+
+    private static UnexpectedStatusCodeException status(int statusCode, Headers headers, String message) {
+        return UnexpectedStatusCodeException.builder()
+                .statusCode(statusCode)
+                .headers(headers)
+                .body(JsonValue.from(message))
+                .build();
+    }
+
+    private static OpenAIIoException io(IOException cause) {
+        return new OpenAIIoException("Request failed", cause);
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+    }
+}
@@ -0,0 +1,247 @@
+package net.devemperor.asr.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.openai.core.RequestOptions;
+import com.openai.core.Timeout;
+import com.openai.core.http.HttpMethod;
+import com.openai.core.http.HttpRequest;
+import com.openai.core.http.HttpRequestBody;
+import com.openai.core.http.HttpResponse;
+import com.openai.errors.OpenAIIoException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class TracingHttpClientTest {
+
+    private MockWebServer server;
+    private TracingHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new TracingHttpClient(new OkHttpClient());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void mapsUrlHeadersAndBody() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        HttpRequest request = HttpRequest.builder()
+                .method(HttpMethod.POST)
+                .baseUrl(server.url("/v1").toString())
+                .addPathSegment("chat")
+                .addPathSegment("completions")
+                .putQueryParam("stream", "true")
+                .putHeader("Authorization", "Bearer key")
+                .body(body("{\"model\":\"m\"}", "application/json"))
+                .build();
+        try (HttpResponse response = client.execute(request, RequestOptions.none())) {
+            assertEquals(200, response.statusCode());
+            assertEquals("{}", read(response.body()));
+        }
+
+        RecordedRequest recorded = server.takeRequest();
+        assertEquals("POST", recorded.getMethod());
+        assertEquals("/v1/chat/completions?stream=true", recorded.getPath());
+        assertEquals("Bearer key", recorded.getHeader("Authorization"));
+        assertTrue(recorded.getHeader("Content-Type").startsWith("application/json"));
+        assertEquals("{\"model\":\"m\"}", recorded.getBody().readUtf8());
+    }
+
+    @Test
+    public void postWithoutBodySendsAnEmptyOne() throws Exception {
+        server.enqueue(new MockResponse());
+
+        client.execute(get(HttpMethod.POST), RequestOptions.none()).close();
+
+        assertEquals(0, server.takeRequest().getBodySize());
+    }
+
+    @Test
+    public void errorResponseKeepsStatusHeadersAndBody() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .setHeader("Retry-After", "2")
+                .setBody("{\"error\":{\"message\":\"slow down\"}}"));
+
+        try (HttpResponse response = client.execute(get(HttpMethod.GET), RequestOptions.none())) {
+            assertEquals(429, response.statusCode());
+            assertEquals("2", response.headers().values("Retry-After").get(0));
+            assertEquals("{\"error\":{\"message\":\"slow down\"}}", read(response.body()));
+        }
+    }
+
+    @Test
+    public void streamingBodyIsReadableBeforeItIsComplete() throws Exception {
+        String events = "data: {\"delta\":\"a\"}\n\ndata: {\"delta\":\"b\"}\n\ndata: [DONE]\n\n";
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(events)
+                .throttleBody(16, 400, TimeUnit.MILLISECONDS));
+
+        try (HttpResponse response = client.execute(get(HttpMethod.GET), RequestOptions.none())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8));
+            assertEquals("data: {\"delta\":\"a\"}", reader.readLine());
+            long firstEvent = System.nanoTime();
+
+            StringBuilder rest = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) rest.append(line).append('\n');
+            long restMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstEvent);
+            assertEquals("\ndata: {\"delta\":\"b\"}\n\ndata: [DONE]\n\n", rest.toString());
+            assertTrue("rest arrived after " + restMs + " ms", restMs >= 400);  // the first event was not held back until the end
+        }
+    }
+
+    @Test
+    public void requestTimeoutIsAppliedPerCall() {
+        server.enqueue(new MockResponse().setHeadersDelay(3, TimeUnit.SECONDS));
+        Timeout timeout = Timeout.builder()
+                .connect(Duration.ofSeconds(5))
+                .read(Duration.ofMillis(200))
+                .write(Duration.ofSeconds(5))
+                .request(Duration.ofSeconds(10))
+                .build();
+
+        try {
+            client.execute(get(HttpMethod.GET), RequestOptions.builder().timeout(timeout).build());
+            fail("expected a timeout");
+        } catch (OpenAIIoException e) {
+            assertTrue(RetryPolicy.isTimeout(e));
+            assertTrue(RetryPolicy.isRetryable(e));
+        }
+    }
+
+    @Test
+    public void cancellingTheScopeAbortsTheCall() throws Exception {
+        server.enqueue(new MockResponse().setHeadersDelay(10, TimeUnit.SECONDS));
+        CancellationScope scope = new CancellationScope();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Callable<HttpResponse> task = scope.wrap(() -> client.execute(get(HttpMethod.GET), RequestOptions.none()));
+            Future<HttpResponse> result = executor.submit(task);
+            server.takeRequest(5, TimeUnit.SECONDS);  // the call is registered before it is sent
+            scope.cancel();
+
+            try {
+                result.get(2, TimeUnit.SECONDS);
+                fail("expected the call to be cancelled");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof OpenAIIoException);
+                assertTrue(e.getCause().getCause() instanceof InterruptedIOException);
+                assertFalse(RetryPolicy.isTimeout(e.getCause()));
+                assertFalse(RetryPolicy.isRetryable(e.getCause()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void callsAfterCancelAreAbortedRightAway() throws Exception {
+        server.enqueue(new MockResponse());
+        CancellationScope scope = new CancellationScope();
+        scope.cancel();
+
+        try {
+            scope.wrap(() -> client.execute(get(HttpMethod.GET), RequestOptions.none())).call();
+            fail("expected the call to be cancelled");
+        } catch (OpenAIIoException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        }
+        assertNull(server.takeRequest(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void asyncResponseCompletesTheFuture() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("busy"));
+
+        try (HttpResponse response = client.executeAsync(get(HttpMethod.GET), RequestOptions.none()).get(5, TimeUnit.SECONDS)) {
+            assertEquals(503, response.statusCode());
+            assertEquals("busy", read(response.body()));
+        }
+    }
+
+    private HttpRequest get(HttpMethod method) {
+        return HttpRequest.builder()
+                .method(method)
+                .baseUrl(server.url("/").toString())
+                .addPathSegment("models")
+                .build();
+    }
+
+    private static HttpRequestBody body(String content, String contentType) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new HttpRequestBody() {
+            @Override
+            public void writeTo(OutputStream outputStream) {
+                try {
+                    outputStream.write(bytes);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public boolean repeatable() {
+                return true;
+            }
+
+            @Override
+            public void close() { }
+        };
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = stream.read(buffer)) != -1) out.write(buffer, 0, read);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
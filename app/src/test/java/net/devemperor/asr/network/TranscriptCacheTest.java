@@ -0,0 +1,117 @@
+package net.devemperor.asr.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContextWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class TranscriptCacheTest {
+
+    private File cacheDir;
+    private TranscriptCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("cache").toFile();
+        cache = new TranscriptCache(new ContextWrapper(null) {
+            @Override
+            public File getCacheDir() {
+                return cacheDir;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        delete(cacheDir);
+    }
+
+    @Test
+    public void keyDependsOnContentNotFileName() throws IOException {
+        File first = audio("a.m4a", new byte[]{1, 2, 3});
+        File second = audio("b.m4a", new byte[]{1, 2, 3});
+        assertEquals(TranscriptCache.key(first, "whisper-1", "en", ""), TranscriptCache.key(second, "whisper-1", "en", ""));
+    }
+
+    @Test
+    public void keyChangesWithEveryParameter() throws IOException {
+        File audio = audio("a.m4a", new byte[]{1, 2, 3});
+        String key = TranscriptCache.key(audio, "whisper-1", "en", "");
+
+        assertNotEquals(key, TranscriptCache.key(audio, "gpt-4o-transcribe", "en", ""));
+        assertNotEquals(key, TranscriptCache.key(audio, "whisper-1", "de", ""));
+        assertNotEquals(key, TranscriptCache.key(audio, "whisper-1", "en", "Use British spelling."));
+        assertNotEquals(key, TranscriptCache.key(audio("b.m4a", new byte[]{1, 2, 4}), "whisper-1", "en", ""));
+    }
+
+    @Test
+    public void parametersDoNotRunIntoEachOther() throws IOException {
+        File audio = audio("a.m4a", new byte[]{1, 2, 3});
+        assertNotEquals(TranscriptCache.key(audio, "whisper-1", "en", ""), TranscriptCache.key(audio, "whisper-1e", "n", ""));
+    }
+
+    @Test
+    public void keyIsAHexDigest() throws IOException {
+        String key = TranscriptCache.key(audio("a.m4a", new byte[0]), "whisper-1", null, null);
+        assertEquals(64, key.length());
+        assertTrue(key.matches("[0-9a-f]+"));
+    }
+
+    @Test
+    public void storesAndReturnsTranscripts() {
+        assertNull(cache.get("key"));
+        cache.put("key", "hello world");
+        assertEquals("hello world", cache.get("key"));
+
+        cache.put("key", "hallo welt");
+        assertEquals("hallo welt", cache.get("key"));
+    }
+
+    @Test
+    public void nullTranscriptIsNotStored() {
+        cache.put("key", null);
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        cache.put("first", "one");
+        cache.put("second", "two");
+        cache.clear();
+        assertNull(cache.get("first"));
+        assertNull(cache.get("second"));
+    }
+
+    @Test
+    public void expiredEntriesAreDropped() {
+        cache.put("key", "hello world");
+        File entry = new File(new File(cacheDir, "transcripts"), "key");
+        assertTrue(entry.setLastModified(System.currentTimeMillis() - 8L * 24 * 60 * 60 * 1000));
+
+        assertNull(cache.get("key"));
+        assertFalse(entry.exists());
+    }
+
+    private File audio(String name, byte[] content) throws IOException {
+        File file = new File(cacheDir, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) delete(child);
+        file.delete();
+    }
+}
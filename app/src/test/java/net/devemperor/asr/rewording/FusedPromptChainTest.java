@@ -0,0 +1,82 @@
+package net.devemperor.asr.rewording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FusedPromptChainTest {
+
+    private static final PromptModel FORMAL = new PromptModel(1, 0, "Formal", "Rewrite the text in a formal tone.", true, false);
+    private static final PromptModel TRANSLATE = new PromptModel(2, 1, "English", "Translate the text to English.", true, false);
+
+    @Test
+    public void parsesTheTaggedResult() {
+        assertEquals("Hello world.", FusedPromptChain.parseResult("<result>Hello world.</result>"));
+        assertEquals("Hello world.", FusedPromptChain.parseResult("Sure! <result>\n  Hello world.\n</result> Anything else?"));
+        assertEquals("first line\nsecond line", FusedPromptChain.parseResult("<result>first line\nsecond line</result>"));
+        assertEquals("", FusedPromptChain.parseResult("<result></result>"));
+    }
+
+    @Test
+    public void resultWithoutTagsIsRejected() {
+        assertNull(FusedPromptChain.parseResult(null));
+        assertNull(FusedPromptChain.parseResult("Hello world."));
+        assertNull(FusedPromptChain.parseResult("<result>Hello world."));
+        assertNull(FusedPromptChain.parseResult("Hello world.</result>"));
+        assertNull(FusedPromptChain.parseResult("</result>Hello world.<result>"));
+    }
+
+    @Test
+    public void compilesSelectionPromptsInOrder() {
+        FusedPromptChain chain = FusedPromptChain.compile(null, null, Arrays.asList(FORMAL, TRANSLATE), "hallo welt");
+
+        assertNotNull(chain);
+        assertEquals(2, chain.getStepCount());
+        assertEquals("Formal → English", chain.getName());
+        String prompt = chain.getUserPrompt();
+        assertTrue(prompt.indexOf("### Step 1\n" + FORMAL.getPrompt()) < prompt.indexOf("### Step 2\n" + TRANSLATE.getPrompt()));
+        assertTrue(prompt.endsWith("### Text\nhallo welt"));
+    }
+
+    @Test
+    public void formattingRunsFirst() {
+        FusedPromptChain chain = FusedPromptChain.compile("Fix punctuation.", "Formatting", Collections.singletonList(TRANSLATE), "hallo welt");
+
+        assertNotNull(chain);
+        assertEquals(2, chain.getStepCount());
+        assertEquals("Formatting → English", chain.getName());
+        assertTrue(chain.getUserPrompt().contains("### Step 1\nFix punctuation.\n"));
+    }
+
+    @Test
+    public void formattingAloneIsAChain() {
+        FusedPromptChain chain = FusedPromptChain.compile("Fix punctuation.", "Formatting", Collections.emptyList(), "hallo welt");
+        assertNotNull(chain);
+        assertEquals(1, chain.getStepCount());
+    }
+
+    @Test
+    public void nothingToCompile() {
+        assertNull(FusedPromptChain.compile(null, null, Collections.emptyList(), "hallo welt"));
+        assertNull(FusedPromptChain.compile("Fix punctuation.", "Formatting", Collections.singletonList(FORMAL), "  "));
+        assertNull(FusedPromptChain.compile("Fix punctuation.", "Formatting", Collections.singletonList(FORMAL), null));
+    }
+
+    @Test
+    public void fixedTextPromptsAreNotFused() {
+        PromptModel signature = new PromptModel(3, 2, "Signature", "[Best regards]", true, false);
+        assertNull(FusedPromptChain.compile(null, null, Arrays.asList(FORMAL, signature), "hallo welt"));
+    }
+
+    @Test
+    public void promptsWithoutSelectionAreNotFused() {
+        PromptModel question = new PromptModel(4, 3, "Question", "Answer the question.", false, false);
+        assertNull(FusedPromptChain.compile(null, null, Arrays.asList(FORMAL, question), "hallo welt"));
+    }
+}
@@ -0,0 +1,89 @@
+package net.devemperor.asr.rewording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SpokenCommandFormatterTest {
+
+    @Test
+    public void textWithoutCommandsIsUnchanged() {
+        assertEquals("Hello world, how are you?", SpokenCommandFormatter.format("Hello world, how are you?", "en"));
+        assertNull(SpokenCommandFormatter.format(null, "en"));
+        assertEquals("   ", SpokenCommandFormatter.format("   ", "en"));
+    }
+
+    @Test
+    public void replacesPunctuationCues() {
+        assertEquals("hello, how are you?", SpokenCommandFormatter.format("hello comma how are you question mark", "en"));
+        assertEquals("hello, world", SpokenCommandFormatter.format("hello comma world", "en-US"));
+        assertEquals(".", SpokenCommandFormatter.format("period", "en"));
+    }
+
+    @Test
+    public void punctuationTheModelAlreadyAddedIsNotDoubled() {
+        assertEquals("Hello, world.", SpokenCommandFormatter.format("Hello, comma world.", "en"));
+    }
+
+    @Test
+    public void lineBreaksCapitalizeTheNextWord() {
+        assertEquals("hello\nHow are you", SpokenCommandFormatter.format("hello new line how are you", "en"));
+        assertEquals("first part\n\nSecond part", SpokenCommandFormatter.format("first part new paragraph second part", "en"));
+        assertEquals("hola.\n\nAdiós", SpokenCommandFormatter.format("hola punto y aparte adiós", "es"));
+    }
+
+    @Test
+    public void buildsLists() {
+        assertEquals("1. Milk\n2. Eggs", SpokenCommandFormatter.format("number one milk number two eggs", "en"));
+        assertEquals("- milk\n- eggs", SpokenCommandFormatter.format("bullet milk bullet eggs", "en"));
+    }
+
+    @Test
+    public void singleNumberIsNotAList() {
+        assertNull(SpokenCommandFormatter.format("she was number one milk producer", "en"));
+    }
+
+    @Test
+    public void quotes() {
+        assertEquals("he said \"hi\"", SpokenCommandFormatter.format("he said open quote hi close quote", "en"));
+    }
+
+    @Test
+    public void cueAfterADeterminerIsAWord() {
+        assertNull(SpokenCommandFormatter.format("write the colon here", "en"));
+        assertNull(SpokenCommandFormatter.format("use a comma here", "en"));
+    }
+
+    @Test
+    public void nounCueAfterAnOrdinaryWordIsAWord() {
+        assertNull(SpokenCommandFormatter.format("the trial period.", "en"));
+        assertNull(SpokenCommandFormatter.format("after the grace period", "en"));
+        assertNull(SpokenCommandFormatter.format("wir treffen uns um Punkt", "de"));
+        assertNull(SpokenCommandFormatter.format("hasta cierto punto", "es"));
+    }
+
+    @Test
+    public void styleCommands() {
+        assertEquals("**hello**", SpokenCommandFormatter.format("start bold hello end bold", "en"));
+        assertNull(SpokenCommandFormatter.format("make this bold", "en"));
+        assertNull(SpokenCommandFormatter.format("start bold hello", "en"));
+        assertNull(SpokenCommandFormatter.format("end bold hello", "en"));
+    }
+
+    @Test
+    public void unknownLanguageIsLeftToTheModel() {
+        assertNull(SpokenCommandFormatter.format("bonjour virgule le monde", "fr"));
+    }
+
+    @Test
+    public void detectUsesEveryDictionary() {
+        assertEquals("hallo, welt", SpokenCommandFormatter.format("hallo komma welt", "detect"));
+        assertEquals("hello, world", SpokenCommandFormatter.format("hello comma world", null));
+    }
+
+    @Test
+    public void spanishQuestionMark() {
+        assertEquals("cómo estás?", SpokenCommandFormatter.format("cómo estás signo de interrogación", "es"));
+    }
+}